@@ -4,7 +4,11 @@
 
 package libsvm;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 //
 // Kernel Cache
@@ -12,161 +16,1455 @@ import java.util.*;
 // l is the number of total data items
 // size is the cache size limit in bytes
 //
+// columns are kept as float[] on the java heap; subclasses may keep them
+// elsewhere by overriding the storage hooks, the LRU list is shared
+//
+// policy picks the column to evict (svm_parameter.LRU, LFU or KEEP_FREE_SV)
+// in constant time: LFU keeps the columns in buckets of equal hits, and
+// KEEP_FREE_SV a second LRU list of the columns whose variables are not
+// free. kernel tells KEEP_FREE_SV which columns belong to free variables,
+// and the cache counts its requests in kernel.stats
+//
 class Cache {
-	private final int l;
-	private long size;
-	private final class head_t
+	protected final int l;
+	protected long size;
+	final class head_t
+	{
+		head_t prev, next;	// a cicular list
+		float[] data;
+		short[] bits;		// Half_Cache only
+		int slot = -1;		// Direct_Cache only
+		int len;		// data[0,len) is cached in this entry
+		int hits;		// LFU priority: requests since cached plus the age then
+		int index;		// position in head[], fixed
+		head_t qprev, qnext;	// in a bucket (LFU) or the idle list (KEEP_FREE_SV), else null
+		bucket_t bucket;	// LFU: bucket of hits, kept while h is taken out for a request
+	}
+	// LFU: the cached columns with hits equal, least recently used first
+	final class bucket_t
+	{
+		bucket_t prev, next;	// by hits ascending, circular; null once dropped
+		final head_t list = new head_t();
+		int hits;
+
+		bucket_t(int hits)
+		{
+			this.hits = hits;
+			list.qprev = list.qnext = list;
+		}
+
+		boolean empty()
+		{
+			return list.qnext == list;
+		}
+	}
+	final head_t[] head;
+	private head_t lru_head;
+	private final bucket_t buckets;	// LFU
+	private final head_t idle_head;	// KEEP_FREE_SV: cached columns of variables not free, least recent first
+	private final int policy;
+	private final Kernel kernel;
+	private int age;	// LFU priority of the last evicted column
+	protected final long capacity;	// size when empty, in floats
+	final svm_cache_stats stats;
+
+	Cache(int l_, long size_, int policy_, Kernel kernel_)
+	{
+		l = l_;
+		size = size_;
+		policy = policy_;
+		kernel = kernel_;
+		head = new head_t[l];
+		for(int i=0;i<l;i++)
+		{
+			head[i] = new head_t();
+			head[i].index = i;
+		}
+		size /= 4;
+		size -= l * (16/4);	// sizeof(head_t) == 16
+		size = Math.max(size, 2* (long) l);  // cache must be large enough for two columns
+		capacity = size;
+		stats = kernel.stats;
+		lru_head = new head_t();
+		lru_head.next = lru_head.prev = lru_head;
+		buckets = new bucket_t(Integer.MIN_VALUE);
+		buckets.prev = buckets.next = buckets;
+		idle_head = new head_t();
+		idle_head.qprev = idle_head.qnext = idle_head;
+	}
+
+	static Cache create(int l, long size, svm_parameter param, Kernel kernel)
+	{
+		if(param.cache_type == svm_parameter.DIRECT_CACHE)
+			return new Direct_Cache(l,size,param.cache_policy,kernel);
+		if(param.cache_precision != svm_parameter.FP32)
+			return new Half_Cache(l,size,param.cache_policy,kernel,param.cache_precision);
+		return new Cache(l,size,param.cache_policy,kernel);
+	}
+
+	private void lru_delete(head_t h)
+	{
+		// delete from current location
+		h.prev.next = h.next;
+		h.next.prev = h.prev;
+	}
+
+	private void lru_insert(head_t h)
+	{
+		// insert to last position
+		h.next = lru_head;
+		h.prev = lru_head.prev;
+		h.prev.next = h;
+		h.next.prev = h;
+	}
+
+	private static void queue_unlink(head_t h)
+	{
+		h.qprev.qnext = h.qnext;
+		h.qnext.qprev = h.qprev;
+		h.qprev = h.qnext = null;
+	}
+
+	private static void queue_append(head_t list, head_t h)
+	{
+		h.qnext = list;
+		h.qprev = list.qprev;
+		h.qprev.qnext = h;
+		h.qnext.qprev = h;
+	}
+
+	private static void bucket_drop(bucket_t b)
+	{
+		b.prev.next = b.next;
+		b.next.prev = b.prev;
+		b.prev = b.next = null;
+	}
+
+	// after lru_insert(h): put h on the list of the policy
+	private void queue_insert(head_t h)
+	{
+		if(policy == svm_parameter.LFU)
+		{
+			// start from the bucket h was in, or from the front for a new
+			// column. Neither is more than one bucket away: hits grows by
+			// one a request, and a new column starts at the age, which is
+			// at most the smallest hits cached
+			bucket_t old = h.bucket;
+			bucket_t b = old != null && old.next != null ? old : buckets;
+			while(b.next != buckets && b.next.hits <= h.hits)
+				b = b.next;
+			if(b.hits != h.hits)
+			{
+				bucket_t n = new bucket_t(h.hits);
+				n.prev = b;
+				n.next = b.next;
+				b.next.prev = n;
+				b.next = n;
+				b = n;
+			}
+			queue_append(b.list,h);
+			h.bucket = b;
+			if(old != null && old != b && old.next != null && old.empty())
+				bucket_drop(old);
+		}
+		else if(policy == svm_parameter.KEEP_FREE_SV && !kernel.is_free(h.index))
+			queue_append(idle_head,h);
+	}
+
+	// before lru_delete(h) of a column to be requested or swapped; an LFU
+	// bucket left empty stays until queue_insert, which starts from it
+	private void queue_delete(head_t h)
+	{
+		if(h.qnext != null)
+			queue_unlink(h);
+	}
+
+	// take h off the policy's list for good
+	private void queue_remove(head_t h)
+	{
+		queue_delete(h);
+		bucket_t b = h.bucket;
+		if(b != null && b.next != null && b.empty())
+			bucket_drop(b);
+		h.bucket = null;
+	}
+
+	// the column to give up when more room is needed; the LRU list is not empty
+	private head_t victim()
+	{
+		switch(policy)
+		{
+			case svm_parameter.LFU:
+			{
+				// least frequently used, the least recent one among ties;
+				// new columns start at the age of the last victim so that
+				// old counts do not pin columns forever (LFU-DA). The only
+				// empty bucket is that of a column being requested
+				bucket_t b = buckets.next;
+				if(b.empty())
+					b = b.next;
+				return b.list.qnext;
+			}
+			case svm_parameter.KEEP_FREE_SV:
+			{
+				// least recently used column of a variable that is not free
+				if(idle_head.qnext != idle_head)
+					return idle_head.qnext;
+				return lru_head.next;
+			}
+			default:
+				return lru_head.next;
+		}
+	}
+
+	// the variables of column index may have become free or stopped being
+	// free; the solver calls this after changing their alpha_status
+	void alpha_status_changed(int index)
+	{
+		if(policy != svm_parameter.KEEP_FREE_SV)
+			return;
+		head_t h = head[index];
+		if(h.len == 0)
+			return;
+		boolean idle = h.qnext != null;
+		boolean free = kernel.is_free(index);
+		// the solver changes only variables whose columns it has just
+		// requested, so the column goes last in the idle list, where
+		// lru_insert has put it in the LRU list
+		if(idle && free)
+			queue_unlink(h);
+		else if(!idle && !free)
+			queue_append(idle_head,h);
+	}
+
+	// storage hooks
+
+	// bytes held by cached columns
+	long resident_bytes()
+	{
+		return (capacity-size)*4;
+	}
+
+	// can h grow by more entries without evicting anything
+	boolean has_room(head_t h, int more)
+	{
+		return size >= more;
+	}
+
+	// make room for data[0,len) in h, keeping data[0,h.len)
+	void allocate(head_t h, int len)
+	{
+		float[] new_data = new float[len];
+		if(h.data != null) System.arraycopy(h.data,0,new_data,0,h.len);
+		h.data = new_data;
+		size -= len - h.len;
+	}
+
+	void release(head_t h)
+	{
+		size += h.len;
+		h.data = null;
+	}
+
+	// an array holding data[0,len) of h
+	float[] column(head_t h, int len)
+	{
+		return h.data;
+	}
+
+	// whether the arrays of column keep their values while other columns
+	// are requested, rather than being scratch space reused by a later one
+	boolean keeps_columns()
+	{
+		return true;
+	}
+
+	void swap_storage(head_t a, head_t b)
+	{
+		do {float[] _=a.data; a.data=b.data; b.data=_;} while(false);
+	}
+
+	void swap_entries(head_t h, int i, int j)
+	{
+		do {float _=h.data[i]; h.data[i]=h.data[j]; h.data[j]=_;} while(false);
+	}
+
+	// request data [0,len)
+	// return some position p where [p,len) need to be filled
+	// (p >= len if nothing needs to be filled)
+	// java: simulate pointer using single-element array
+	int get_data(int index, float[][] data, int len)
+	{
+		head_t h = head[index];
+		boolean cached = h.len > 0;
+		if(cached)
+		{
+			queue_delete(h);
+			lru_delete(h);
+		}
+		int more = len - h.len;
+		stats.requests++;
+
+		if(more > 0)
+		{
+			// free old space
+			while(!has_room(h,more))
+			{
+				head_t old = victim();
+				stats.evictions++;
+				age = old.hits;
+				queue_remove(old);
+				lru_delete(old);
+				release(old);
+				old.len = 0;
+				old.hits = 0;
+			}
+
+			if(h.len > 0) stats.partial_hits++;
+
+			// allocate new space
+			allocate(h,len);
+			stats.peak_bytes = Math.max(stats.peak_bytes,resident_bytes());
+			do {int _=h.len; h.len=len; len=_;} while(false);
+		}
+		else
+			stats.hits++;
+
+		if(!cached) h.hits = age;
+		h.hits++;
+		lru_insert(h);
+		queue_insert(h);
+		data[0] = column(h,len);
+		return len;
+	}
+
+	// how much of column index is cached, without counting a request
+	int cached_len(int index)
+	{
+		return head[index].len;
+	}
+
+	// store data[start,len) filled in by the caller after get_data
+	void put_data(int index, float[] data, int start, int len)
+	{
+		// data is the cached column itself
+	}
+
+	void swap_index(int i, int j)
+	{
+		if(i==j) return;
+		
+		// the policy's list membership moves with the column: the LFU
+		// bucket, and for KEEP_FREE_SV whether it is idle, since the
+		// solver swaps alpha_status after the cache
+		boolean idle_i = head[i].qnext != null, idle_j = head[j].qnext != null;
+		if(head[i].len > 0) { queue_delete(head[i]); lru_delete(head[i]); }
+		if(head[j].len > 0) { queue_delete(head[j]); lru_delete(head[j]); }
+		swap_storage(head[i],head[j]);
+		do {int _=head[i].len; head[i].len=head[j].len; head[j].len=_;} while(false);
+		do {int _=head[i].hits; head[i].hits=head[j].hits; head[j].hits=_;} while(false);
+		do {bucket_t _=head[i].bucket; head[i].bucket=head[j].bucket; head[j].bucket=_;} while(false);
+		if(head[i].len > 0) { lru_insert(head[i]); requeue(head[i],idle_j); }
+		if(head[j].len > 0) { lru_insert(head[j]); requeue(head[j],idle_i); }
+
+		if(i>j) do {int _=i; i=j; j=_;} while(false);
+		for(head_t h = lru_head.next; h!=lru_head; h=h.next)
+		{
+			if(h.len > i)
+			{
+				if(h.len > j)
+					swap_entries(h,i,j);
+				else
+				{
+					// give up
+					queue_remove(h);
+					lru_delete(h);
+					release(h);
+					h.len = 0;
+					h.hits = 0;
+				}
+			}
+		}
+	}
+
+	// queue_insert for swap_index, which already knows whether h is idle
+	private void requeue(head_t h, boolean idle)
+	{
+		if(policy == svm_parameter.LFU)
+			queue_insert(h);
+		else if(idle)
+			queue_append(idle_head,h);
+	}
+}
+
+//
+// Kernel Cache outside the java heap
+//
+// the whole cache is allocated up front as direct buffers cut into slots
+// of l floats, so a column grows in place and an evicted column only gives
+// its slot back. get_data returns a copy of data[0,len) in one of two
+// scratch arrays, which stays valid until the next-but-one get_data; a
+// column still held in a scratch array is handed out again without a copy.
+//
+final class Direct_Cache extends Cache {
+	private final FloatBuffer[] chunk;
+	private final int slots_per_chunk;
+	private final int[] free_slot;
+	private int nr_free;
+	private final float[][] buffer;
+	private int next_buffer;
+	// buffer[b][0,held_len[b]) is a copy of column held[b] (null if none)
+	private final head_t[] held = new head_t[2];
+	private final int[] held_len = new int[2];
+
+	Direct_Cache(int l_, long size_, int policy_, Kernel kernel_)
+	{
+		super(l_,size_,policy_,kernel_);
+		int nr_slot = (int)Math.min(size/l, l);	// never more than one slot per column
+		slots_per_chunk = (int)Math.min(nr_slot, Integer.MAX_VALUE/(4L*l));
+		int nr_chunk = (nr_slot+slots_per_chunk-1)/slots_per_chunk;
+		chunk = new FloatBuffer[nr_chunk];
+		for(int c=0;c<nr_chunk;c++)
+		{
+			int n = Math.min(slots_per_chunk, nr_slot-c*slots_per_chunk);
+			chunk[c] = ByteBuffer.allocateDirect(n*l*4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		}
+		free_slot = new int[nr_slot];
+		for(int s=0;s<nr_slot;s++)
+			free_slot[s] = nr_slot-1-s;
+		nr_free = nr_slot;
+		buffer = new float[2][l];
+		next_buffer = 0;
+	}
+
+	private FloatBuffer chunk_of(int slot)
+	{
+		return chunk[slot/slots_per_chunk];
+	}
+
+	private int offset_of(int slot)
+	{
+		return (slot%slots_per_chunk)*l;
+	}
+
+	boolean has_room(head_t h, int more)
+	{
+		return h.slot >= 0 || nr_free > 0;
+	}
+
+	void allocate(head_t h, int len)
+	{
+		if(h.slot < 0)
+			h.slot = free_slot[--nr_free];
+	}
+
+	void release(head_t h)
+	{
+		forget(h);
+		free_slot[nr_free++] = h.slot;
+		h.slot = -1;
+	}
+
+	long resident_bytes()
+	{
+		return (free_slot.length-nr_free)*4L*l;
+	}
+
+	// the scratch copies of h no longer match its slot
+	private void forget(head_t h)
+	{
+		for(int k=0;k<2;k++)
+			if(held[k] == h)
+				held[k] = null;
+	}
+
+	boolean keeps_columns()
+	{
+		return false;
+	}
+
+	float[] column(head_t h, int len)
+	{
+		for(int k=0;k<2;k++)
+			if(held[k] == h && held_len[k] >= len)
+			{
+				next_buffer = 1 - k;	// keep it for the next get_data too
+				return buffer[k];
+			}
+		int k = next_buffer;
+		float[] buf = buffer[k];
+		next_buffer = 1 - next_buffer;
+		if(len > 0)
+		{
+			FloatBuffer b = chunk_of(h.slot);
+			b.position(offset_of(h.slot));
+			b.get(buf,0,len);
+		}
+		held[k] = h;
+		held_len[k] = len;
+		return buf;
+	}
+
+	void put_data(int index, float[] data, int start, int len)
+	{
+		head_t h = head[index];
+		FloatBuffer b = chunk_of(h.slot);
+		b.position(offset_of(h.slot)+start);
+		b.put(data,start,len-start);
+		for(int k=0;k<2;k++)
+			if(held[k] == h && buffer[k] == data)
+				held_len[k] = len;
+	}
+
+	void swap_storage(head_t a, head_t b)
+	{
+		forget(a);
+		forget(b);
+		do {int _=a.slot; a.slot=b.slot; b.slot=_;} while(false);
+	}
+
+	void swap_entries(head_t h, int i, int j)
+	{
+		forget(h);
+		FloatBuffer b = chunk_of(h.slot);
+		int base = offset_of(h.slot);
+		float t = b.get(base+i);
+		b.put(base+i,b.get(base+j));
+		b.put(base+j,t);
+	}
+}
+
+//
+// Kernel Cache with 16-bit entries
+//
+// columns are stored as IEEE half precision (FP16) or bfloat16 (BF16)
+// short[], so twice as many entries fit in the same size. get_data widens
+// the column into one of two scratch arrays; put_data rounds what the
+// caller computed and writes the rounded values back, so the solver sees
+// an entry the same way every time it is read.
+//
+final class Half_Cache extends Cache {
+	private final int precision;
+	private final float[][] buffer;
+	private int next_buffer;
+
+	private static final float[] half_to_float = new float[1<<16];
+	static
+	{
+		for(int h=0;h<(1<<16);h++)
+		{
+			int sign = (h & 0x8000) << 16;
+			int exp = (h >>> 10) & 0x1f;
+			int mant = h & 0x3ff;
+			float f;
+			if(exp == 0)
+				f = mant * 0x1p-24f;	// zero or subnormal
+			else if(exp == 0x1f)
+				f = mant == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+			else
+				f = Float.intBitsToFloat(((exp-15+127) << 23) | (mant << 13));
+			half_to_float[h] = sign != 0 ? -f : f;
+		}
+	}
+
+	Half_Cache(int l_, long size_, int policy_, Kernel kernel_, int precision_)
+	{
+		super(l_,size_,policy_,kernel_);
+		size *= 2;	// in entries of two bytes
+		precision = precision_;
+		buffer = new float[2][l];
+		next_buffer = 0;
+	}
+
+	// round to nearest even, overflowing to infinity
+	static short to_half(float f)
+	{
+		int bits = Float.floatToRawIntBits(f);
+		int sign = (bits >>> 16) & 0x8000;
+		if(Float.isNaN(f))
+			return (short)(sign | 0x7e00);
+		float a = Math.abs(f);
+		if(a >= 65520f)
+			return (short)(sign | 0x7c00);
+		if(a <= 0x1p-25f)
+			return (short)sign;
+		int exp = Math.getExponent(f);
+		int shift = 13;
+		int mant = (bits & 0x7fffff) | 0x800000;
+		if(exp < -14)
+		{
+			shift += -14 - exp;	// subnormal
+			exp = -15;
+		}
+		int half = mant >> shift;
+		int rest = mant & ((1 << shift) - 1);
+		int halfway = 1 << (shift-1);
+		if(rest > halfway || (rest == halfway && (half & 1) != 0))
+			half++;
+		// half still carries the implicit bit, except for subnormals
+		return (short)(sign | (((exp+15) << 10) + (exp == -15 ? half : half - 0x400)));
+	}
+
+	static short to_bf16(float f)
+	{
+		int bits = Float.floatToRawIntBits(f);
+		if(Float.isNaN(f))
+			return (short)((bits >>> 16) | 0x40);
+		return (short)((bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16);
+	}
+
+	private float widen(short b)
+	{
+		if(precision == svm_parameter.BF16)
+			return Float.intBitsToFloat(b << 16);
+		return half_to_float[b & 0xffff];
+	}
+
+	private short narrow(float f)
+	{
+		return precision == svm_parameter.BF16 ? to_bf16(f) : to_half(f);
+	}
+
+	void allocate(head_t h, int len)
+	{
+		short[] new_bits = new short[len];
+		if(h.bits != null) System.arraycopy(h.bits,0,new_bits,0,h.len);
+		h.bits = new_bits;
+		size -= len - h.len;
+	}
+
+	void release(head_t h)
+	{
+		size += h.len;
+		h.bits = null;
+	}
+
+	long resident_bytes()
+	{
+		return (2*capacity-size)*2;
+	}
+
+	boolean keeps_columns()
+	{
+		return false;
+	}
+
+	float[] column(head_t h, int len)
+	{
+		float[] buf = buffer[next_buffer];
+		next_buffer = 1 - next_buffer;
+		short[] bits = h.bits;
+		for(int j=0;j<len;j++)
+			buf[j] = widen(bits[j]);
+		return buf;
+	}
+
+	void put_data(int index, float[] data, int start, int len)
+	{
+		short[] bits = head[index].bits;
+		for(int j=start;j<len;j++)
+		{
+			bits[j] = narrow(data[j]);
+			data[j] = widen(bits[j]);
+		}
+	}
+
+	void swap_storage(head_t a, head_t b)
+	{
+		do {short[] _=a.bits; a.bits=b.bits; b.bits=_;} while(false);
+	}
+
+	void swap_entries(head_t h, int i, int j)
+	{
+		do {short _=h.bits[i]; h.bits[i]=h.bits[j]; h.bits[j]=_;} while(false);
+	}
+}
+
+//
+// Precomputed kernel matrix in a memory-mapped file
+//
+// the file is little-endian: int rows, int cols, int bytes per entry (4 for
+// float, 8 for double), then the entries row by row. Entry (r,c) is the
+// kernel value between the vectors with serial numbers r+1 and c+1, the
+// numbers held in x[0].value of each svm_node[] as for PRECOMPUTED.
+// Files are mapped once per process and shared by every kernel using them.
+//
+final class Mapped_Kernel {
+	final int rows, cols;
+	private final int rows_per_chunk;
+	private final FloatBuffer[] floats;	// null if the file holds doubles
+	private final DoubleBuffer[] doubles;
+	private final long length, modified;
+
+	private static final ConcurrentHashMap<String,Mapped_Kernel> mapped = new ConcurrentHashMap<String,Mapped_Kernel>();
+
+	private Mapped_Kernel(File file) throws IOException
+	{
+		length = file.length();
+		modified = file.lastModified();
+		RandomAccessFile raf = new RandomAccessFile(file,"r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+			while(header.hasRemaining())
+				if(channel.read(header,header.position()) < 0)
+					throw new IOException(file+": truncated header");
+			rows = header.getInt(0);
+			cols = header.getInt(4);
+			int bytes = header.getInt(8);
+			if(rows <= 0 || cols <= 0 || (bytes != 4 && bytes != 8))
+				throw new IOException(file+": not a kernel matrix");
+			if(length < 12+(long)rows*cols*bytes)
+				throw new IOException(file+": truncated matrix");
+
+			// FileChannel.map is limited to 2GB, so map bands of rows
+			rows_per_chunk = (int)Math.min(rows, Math.max(1, Integer.MAX_VALUE/((long)cols*bytes)));
+			int nr_chunk = (rows+rows_per_chunk-1)/rows_per_chunk;
+			floats = bytes == 4 ? new FloatBuffer[nr_chunk] : null;
+			doubles = bytes == 8 ? new DoubleBuffer[nr_chunk] : null;
+			for(int c=0;c<nr_chunk;c++)
+			{
+				int n = Math.min(rows_per_chunk, rows-c*rows_per_chunk);
+				long start = 12+(long)c*rows_per_chunk*cols*bytes;
+				ByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, start, (long)n*cols*bytes).order(ByteOrder.LITTLE_ENDIAN);
+				if(bytes == 4)
+					floats[c] = b.asFloatBuffer();
+				else
+					doubles[c] = b.asDoubleBuffer();
+			}
+		}
+		finally
+		{
+			raf.close();	// mappings stay valid
+		}
+	}
+
+	// map file_name, or reuse the mapping if the file did not change since
+	static Mapped_Kernel open(String file_name) throws IOException
+	{
+		File file = new File(file_name);
+		Mapped_Kernel m = mapped.get(file_name);
+		if(m == null || m.length != file.length() || m.modified != file.lastModified())
+		{
+			m = new Mapped_Kernel(file);
+			mapped.put(file_name,m);
+		}
+		return m;
+	}
+
+	// the current mapping of file_name, without checking the file
+	static Mapped_Kernel lookup(String file_name)
+	{
+		Mapped_Kernel m = mapped.get(file_name);
+		if(m != null)
+			return m;
+		try
+		{
+			return open(file_name);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// kernel value between the vectors with serial numbers r and c
+	double get(int r, int c)
+	{
+		int chunk = (r-1)/rows_per_chunk;
+		int k = ((r-1)%rows_per_chunk)*cols + c-1;
+		if(floats != null)
+			return floats[chunk].get(k);
+		return doubles[chunk].get(k);
+	}
+
+	static void save(String file_name, int rows, int cols, int bytes, double[][] kernel, float[][] kernel_f) throws IOException
+	{
+		FileOutputStream out = new FileOutputStream(file_name);
+		try
+		{
+			FileChannel channel = out.getChannel();
+			ByteBuffer b = ByteBuffer.allocate(Math.max(12,cols*bytes)).order(ByteOrder.LITTLE_ENDIAN);
+			b.putInt(rows).putInt(cols).putInt(bytes).flip();
+			while(b.hasRemaining()) channel.write(b);
+			for(int r=0;r<rows;r++)
+			{
+				b.clear();
+				for(int c=0;c<cols;c++)
+					if(bytes == 4)
+						b.putFloat(kernel_f[r][c]);
+					else
+						b.putDouble(kernel[r][c]);
+				b.flip();
+				while(b.hasRemaining()) channel.write(b);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		mapped.remove(file_name);
+	}
+}
+
+/**
+ * Kernel evaluation<br/>
+ * the static method k_function is for doing single kernel evaluation<br/>
+ * the constructor of Kernel prepares to calculate the l*l kernel matrix<br/>
+ * the member function get_Q is for getting one column from the Q Matrix<br/>
+ * @author wangjiewen
+ *
+ */
+abstract class QMatrix {
+	
+	/**
+	 * getting one column from the Q Matrix
+	 * @param column
+	 * @param len
+	 * @return
+	 */
+	abstract float[] get_Q(int column, int len);
+
+	// whether an array returned by get_Q keeps its values while other
+	// columns are requested, until swap_index; else a later get_Q may
+	// reuse it
+	boolean keeps_columns() { return false; }
+	
+	/**
+	 * record the value of kernel funtion <br/>
+	 * different type svm have different kernel function
+	 * eg:QD[i] = kernel_function(i,i);
+	 * @return
+	 */
+	abstract double[] get_QD();
+	abstract void swap_index(int i, int j);
+
+	// the solver's alpha_status, which it keeps in step with swap_index
+	void set_alpha_status(byte[] alpha_status) {}
+
+	// alpha_status[i] has been updated
+	void alpha_status_changed(int i) {}
+
+	// kernel cache use so far
+	svm_cache_stats cache_stats() { return new svm_cache_stats(); }
+
+	// hint that get_Q(columns[k],len) for k < n is likely to come soon
+	void prefetch(int[] columns, int n, int len) {}
+
+	// no more hints will come
+	void end_prefetch() {}
+};
+
+// The training vectors of a run, packed once in the layout the kernel is
+// evaluated on and shared by every kernel of the run: the one-vs-one
+// pairs, the folds of a cross validation and the cells of a grid search
+// take their vectors as rows of it through a View.
+//
+// Packed row r has the features x_index[k], x_value[k] for x_ptr[r] <= k
+// < x_ptr[r+1]: 12 bytes per feature and 4 per row. The svm_node arrays of
+// the caller stay in use for the models and for testing, so this is on
+// top of them, once per run. Within dense_size, rows with at least half
+// of the features present are also kept dense, 8 bytes per feature index
+// up to the largest plus 4 per row, for a dot product without index
+// compares.
+//
+final class Packed_Rows {
+	final int[] x_ptr;
+	final int[] x_index;
+	final double[] x_value;
+	// the dense rows: feature index k of row r is x_dense[x_dense_ptr[r]+k],
+	// or x_dense_ptr[r] is -1 if the row is only sparse (x_dense is null if
+	// none)
+	final int x_dim;
+	final int[] x_dense_ptr;
+	final double[] x_dense;
+	final int x_width;	// largest feature index + 1, 0 if some index is negative
+
+	Packed_Rows(svm_node[][] x, svm_parameter param)
+	{
+		int l = x.length;
+		long nnz = 0;
+		for(int i=0;i<l;i++)
+			nnz += x[i].length;
+		if(nnz > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("too many features for the kernel: "+nnz);
+
+		x_ptr = new int[l+1];
+		x_index = new int[(int)nnz];
+		x_value = new double[(int)nnz];
+		int k = 0;
+		for(int i=0;i<l;i++)
+		{
+			x_ptr[i] = k;
+			for(int t=0;t<x[i].length;t++,k++)
+			{
+				x_index[k] = x[i][t].index;
+				x_value[k] = x[i][t].value;
+			}
+		}
+		x_ptr[l] = k;
+
+		// dense copies of the mostly dense rows, as many as fit in
+		// dense_size, taken in row order
+		int min_index = 0, max_index = 0;
+		for(k=0;k<x_ptr[l];k++)
+		{
+			min_index = Math.min(min_index,x_index[k]);
+			max_index = Math.max(max_index,x_index[k]);
+		}
+		x_width = min_index >= 0 ? max_index+1 : 0;
+		long budget = (long)(param.dense_size*(1<<20))-4L*l;
+		long max_dense = Math.min(budget/(8L*(max_index+1)),Integer.MAX_VALUE/(max_index+1));
+		int nr_dense = 0;
+		if(param.kernel_type != svm_parameter.PRECOMPUTED && min_index >= 0)
+			for(int i=0;i<l && nr_dense<max_dense;i++)
+				if(2*(x_ptr[i+1]-x_ptr[i]) >= max_index+1)
+					nr_dense++;
+		if(nr_dense > 0)
+		{
+			x_dim = max_index+1;
+			x_dense_ptr = new int[l];
+			x_dense = new double[nr_dense*x_dim];
+			int next = 0;
+			for(int i=0;i<l;i++)
+				if(next < x_dense.length && 2*(x_ptr[i+1]-x_ptr[i]) >= x_dim)
+				{
+					x_dense_ptr[i] = next;
+					for(k=x_ptr[i];k<x_ptr[i+1];k++)
+						x_dense[next+x_index[k]] = x_value[k];
+					next += x_dim;
+				}
+				else
+					x_dense_ptr[i] = -1;
+		}
+		else
+		{
+			x_dim = 0;
+			x_dense_ptr = null;
+			x_dense = null;
+		}
+	}
+
+	// the vectors as given
+	View view()
+	{
+		int l = x_ptr.length-1;
+		int[] row = new int[l];
+		for(int i=0;i<l;i++)
+			row[i] = i;
+		return new View(this,row,null,null);
+	}
+
+	// vector k of a problem is row[k] of the packed rows and, if store is
+	// not null, store_row[k] of the store, which then holds its kernel
+	static final class View
+	{
+		final Packed_Rows rows;
+		final int[] row;
+		final Kernel_Store store;
+		final int[] store_row;
+
+		View(Packed_Rows rows, int[] row, Kernel_Store store, int[] store_row)
+		{
+			this.rows = rows;
+			this.row = row;
+			this.store = store;
+			this.store_row = store_row;
+		}
+
+		// the problem of vectors index[k] of this one
+		View subset(int[] index)
+		{
+			int[] r = new int[index.length];
+			for(int k=0;k<index.length;k++)
+				r[k] = row[index[k]];
+			int[] s = null;
+			if(store != null)
+			{
+				s = new int[index.length];
+				for(int k=0;k<index.length;k++)
+					s[k] = store_row[index[k]];
+			}
+			return new View(rows,r,store,s);
+		}
+	}
+}
+
+// Training vectors as rows of a Packed_Rows, and the kernel values between
+// them. Kernel computes its columns with one, and so does Kernel_Store for
+// the segments it keeps.
+//
+final class Kernel_Rows {
+	// vector i is packed row x_row[i]; the other arrays are those of the
+	// Packed_Rows
+	private final int[] x_row;
+	private final int[] x_ptr;
+	private final int[] x_index;
+	private final double[] x_value;
+	private final int x_dim;
+	private final int[] x_dense_ptr;
+	private final double[] x_dense;
+	private final double[] x_square;
+	private final int x_width;
+	private final Mapped_Kernel gram;	// PRECOMPUTED from kernel_file, else null
+
+	// svm_parameter
+	private final int kernel_type;
+	private final int degree;
+	private final double gamma;
+	private final double coef0;
+
+	// widest x_i scattered into a work array by kernel_column; wider data
+	// goes through the sparse merge of dot
+	private static final int max_scatter = 1<<16;
+
+	// per-thread work arrays for kernel_column, shared by all kernels and
+	// grown as needed: x_i scattered by feature index (all zero between
+	// calls), and the kernel values
+	private static final ThreadLocal<double[][]> column_work = new ThreadLocal<double[][]>()
+	{
+		protected double[][] initialValue()
+		{
+			return new double[2][0];
+		}
+	};
+
+	// kernel_function(i,j) for from <= j < to, returned in [j-from] of an array
+	// owned by the calling thread. x_i is scattered into a dense array once, so
+	// each dot product is a gather over the nonzeros of x_j (or dense_dot when
+	// both rows are dense); the sums come out the same as dot(i,j) because the
+	// extra terms are all zero.
+	double[] kernel_column(int i, int from, int to)
+	{
+		double[][] work = column_work.get();
+		if(work[1].length < to-from)
+			work[1] = new double[Math.max(to-from,x_row.length)];
+		double[] out = work[1];
+		if(kernel_type == svm_parameter.PRECOMPUTED || x_width == 0 || x_width > max_scatter)
+		{
+			for(int j=from;j<to;j++)
+				out[j-from] = kernel_function(i,j);
+			return out;
+		}
+
+		final int[] index = x_index;
+		final double[] value = x_value;
+		if(work[0].length < x_width)
+			work[0] = new double[x_width];
+		double[] xi = work[0];
+		int ri = x_row[i];
+		for(int p=x_ptr[ri];p<x_ptr[ri+1];p++)
+			xi[index[p]] = value[p];
+		int pi = x_dense != null ? x_dense_ptr[ri] : -1;
+		for(int j=from;j<to;j++)
+		{
+			int rj = x_row[j];
+			if(pi >= 0 && x_dense_ptr[rj] >= 0)
+			{
+				out[j-from] = Kernel.dense_dot(x_dense,pi,x_dense,x_dense_ptr[rj],x_dim);
+				continue;
+			}
+			double sum = 0;
+			for(int q=x_ptr[rj];q<x_ptr[rj+1];q++)
+				sum += xi[index[q]] * value[q];
+			out[j-from] = sum;
+		}
+		for(int p=x_ptr[ri];p<x_ptr[ri+1];p++)
+			xi[index[p]] = 0;
+
+		int n = to-from;
+		switch(kernel_type)
+		{
+			case svm_parameter.POLY:
+				for(int k=0;k<n;k++)
+					out[k] = Kernel.powi(gamma*out[k]+coef0,degree);
+				break;
+			case svm_parameter.RBF:
+			{
+				double sq_i = x_square[i];
+				for(int k=0;k<n;k++)
+					out[k] = Math.exp(-gamma*(sq_i+x_square[from+k]-2*out[k]));
+				break;
+			}
+			case svm_parameter.SIGMOID:
+				for(int k=0;k<n;k++)
+					out[k] = Math.tanh(gamma*out[k]+coef0);
+				break;
+		}
+		return out;
+	}
+
+	double kernel_function(int i, int j)
+	{
+		switch(kernel_type)
+		{
+			case svm_parameter.LINEAR:
+				return dot(i,j);
+			case svm_parameter.POLY:
+				return Kernel.powi(gamma*dot(i,j)+coef0,degree);
+			case svm_parameter.RBF:
+				return Math.exp(-gamma*(x_square[i]+x_square[j]-2*dot(i,j)));
+			case svm_parameter.SIGMOID:
+				return Math.tanh(gamma*dot(i,j)+coef0);
+			case svm_parameter.PRECOMPUTED:
+				if(gram != null)
+					return gram.get((int)x_value[x_ptr[x_row[i]]],(int)x_value[x_ptr[x_row[j]]]);
+				return x_value[x_ptr[x_row[i]]+(int)(x_value[x_ptr[x_row[j]]])];
+			default:
+				return 0;	// java
+		}
+	}
+
+	// vector i is row[i] of x
+	Kernel_Rows(Packed_Rows x, int[] row, svm_parameter param)
+	{
+		this.kernel_type = param.kernel_type;
+		this.degree = param.degree;
+		this.gamma = param.gamma;
+		this.coef0 = param.coef0;
+
+		if(kernel_type == svm_parameter.PRECOMPUTED && param.kernel_file != null)
+		{
+			try
+			{
+				gram = Mapped_Kernel.open(param.kernel_file);
+			}
+			catch(IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+		else gram = null;
+
+		int l = row.length;
+		x_row = row.clone();
+		x_ptr = x.x_ptr;
+		x_index = x.x_index;
+		x_value = x.x_value;
+		x_dim = x.x_dim;
+		x_dense_ptr = x.x_dense_ptr;
+		x_dense = x.x_dense;
+		x_width = x.x_width;
+
+		if(kernel_type == svm_parameter.RBF)
+		{
+			x_square = new double[l];
+			for(int i=0;i<l;i++)
+				x_square[i] = dot(i,i);
+		}
+		else x_square = null;
+	}
+
+	void swap_index(int i, int j)
+	{
+		do {int _=x_row[i]; x_row[i]=x_row[j]; x_row[j]=_;} while(false);
+		if(x_square != null) do {double _=x_square[i]; x_square[i]=x_square[j]; x_square[j]=_;} while(false);
+	}
+
+	// dot product of training vectors i and j
+	private double dot(int i, int j)
+	{
+		int ri = x_row[i], rj = x_row[j];
+		if(x_dense != null && x_dense_ptr[ri] >= 0 && x_dense_ptr[rj] >= 0)
+			return Kernel.dense_dot(x_dense,x_dense_ptr[ri],x_dense,x_dense_ptr[rj],x_dim);
+
+		final int[] index = x_index;
+		final double[] value = x_value;
+		double sum = 0;
+		int p = x_ptr[ri], pend = x_ptr[ri+1];
+		int q = x_ptr[rj], qend = x_ptr[rj+1];
+		while(p < pend && q < qend)
+		{
+			if(index[p] == index[q])
+				sum += value[p++] * value[q++];
+			else
+			{
+				if(index[p] > index[q])
+					++q;
+				else
+					++p;
+			}
+		}
+		return sum;
+	}
+}
+
+abstract class Kernel extends QMatrix {
+	// the training vectors, or null if the kernel values come from a
+	// shared store, kernel row k being row[k] of the store (else null)
+	private final Kernel_Rows rows;
+	private final Kernel_Store store;
+	private final int[] row;
+
+	private byte[] alpha_status;	// of the solver, for the KEEP_FREE_SV cache policy
+
+	final svm_cache_stats stats = new svm_cache_stats();	// shared with the cache
+
+	// parallel column fill
+	private final ForkJoinPool pool;	// null if serial
+	private final int fill_threshold;
+	private final int fill_grain;
+
+	// prefetch: kernel rows computed ahead on a helper thread into slots of
+	// their own, never into the cache; fill_column copies a slot instead of
+	// computing the column. swap_index drops all slots first, since the
+	// helper reads the rows it reorders. Each kernel has its own helper, so
+	// a solver never has more than one thread computing ahead for it.
+	private final Prefetch[] prefetch;	// null if off
+	private final ExecutorService helper;
+	private int next_prefetch;
+	private int prefetch_round;
+
+	abstract float[] get_Q(int column, int len);
+	abstract double[] get_QD();
+
+	// compute data[from,to) of column i of Q
+	abstract void fill(float[] data, int i, int from, int to);
+
+	// kernel_function(i,j) for from <= j < to, in an array owned by the
+	// calling thread; without a store only
+	double[] kernel_column(int i, int from, int to)
+	{
+		return rows.kernel_column(i,from,to);
+	}
+
+	// data[j] = kernel_function(i,j) as a float for from <= j < to, from
+	// the store
+	void gather(float[] data, int i, int from, int to)
+	{
+		store.gather(data,row[i],row,from,to);
+	}
+
+	void set_alpha_status(byte[] alpha_status)
+	{
+		this.alpha_status = alpha_status;
+	}
+
+	// whether fill copies kernel values from a Kernel_Store, which counts
+	// the ones it computes itself
+	boolean gathers()
+	{
+		return store != null;
+	}
+
+	// whether column index of the cache belongs to a free variable
+	boolean is_free(int index)
+	{
+		return alpha_status != null && alpha_status[index] == Solver.FREE;
+	}
+
+	// compute data[start,len) of column i, splitting long ranges over the pool;
+	// every entry is computed as in the serial loop so the result is identical
+	void fill_column(float[] data, int i, int start, int len)
+	{
+		long t = System.nanoTime();
+		if(prefetch != null && take_prefetch(data,i,start,len))
+		{
+			stats.fill_time += System.nanoTime()-t;
+			return;
+		}
+		if(pool == null || len-start < fill_threshold)
+			fill(data,i,start,len);
+		else
+			pool.invoke(new Fill(this,data,i,start,len,Math.max(fill_grain,(len-start)/(4*pool.getParallelism()))));
+		stats.fill_time += System.nanoTime()-t;
+		if(!gathers())
+			stats.kernel_evaluations += len-start;
+	}
+
+	svm_cache_stats cache_stats()
+	{
+		return stats;
+	}
+
+	private static final class Fill extends RecursiveAction
+	{
+		private final Kernel kernel;
+		private final float[] data;
+		private final int i, from, to, grain;
+
+		Fill(Kernel kernel, float[] data, int i, int from, int to, int grain)
+		{
+			this.kernel = kernel;
+			this.data = data;
+			this.i = i;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		protected void compute()
+		{
+			if(to-from <= grain)
+				kernel.fill(data,i,from,to);
+			else
+			{
+				int mid = (from+to)>>>1;
+				invokeAll(new Fill(kernel,data,i,from,mid,grain),
+					  new Fill(kernel,data,i,mid,to,grain));
+			}
+		}
+	}
+
+	// start a new round of prefetch_row calls; slots asked for in the
+	// previous round and not again may be reused
+	void next_prefetch_round()
 	{
-		head_t prev, next;	// a cicular list
-		float[] data;
-		int len;		// data[0,len) is cached in this entry
+		prefetch_round++;
 	}
-	private final head_t[] head;
-	private head_t lru_head;
 
-	Cache(int l_, long size_)
+	// start computing data[0,len) of row i on the helper thread, unless it
+	// is under way already or every slot is busy or wanted
+	void prefetch_row(int i, int len)
 	{
-		l = l_;
-		size = size_;
-		head = new head_t[l];
-		for(int i=0;i<l;i++) head[i] = new head_t();
-		size /= 4;
-		size -= l * (16/4);	// sizeof(head_t) == 16
-		size = Math.max(size, 2* (long) l);  // cache must be large enough for two columns
-		lru_head = new head_t();
-		lru_head.next = lru_head.prev = lru_head;
+		if(prefetch == null)
+			return;
+		for(Prefetch f : prefetch)
+			if(f.row == i && f.len >= len)
+			{
+				f.round = prefetch_round;
+				return;
+			}
+		for(int k=0;k<prefetch.length;k++)
+		{
+			Prefetch f = prefetch[next_prefetch];
+			next_prefetch = (next_prefetch+1) % prefetch.length;
+			if(f.row == -1 || (f.round != prefetch_round && f.is_done()))
+			{
+				f.round = prefetch_round;
+				f.start(i,len);
+				stats.prefetches++;
+				if(!gathers())
+					stats.kernel_evaluations += len;
+				return;
+			}
+		}
 	}
 
-	private void lru_delete(head_t h)
+	// copy data[start,len) of row i from a prefetched slot, if there is one
+	private boolean take_prefetch(float[] data, int i, int start, int len)
 	{
-		// delete from current location
-		h.prev.next = h.next;
-		h.next.prev = h.prev;
+		for(Prefetch f : prefetch)
+			if(f.row == i && f.len >= len)
+			{
+				if(!f.is_done())
+				{
+					stats.prefetch_waits++;
+					f.await();
+				}
+				System.arraycopy(f.data,start,data,start,len-start);
+				f.row = -1;
+				stats.prefetch_hits++;
+				return true;
+			}
+		return false;
 	}
 
-	private void lru_insert(head_t h)
+	// let the helper thread end once it has finished its slots
+	void end_prefetch()
 	{
-		// insert to last position
-		h.next = lru_head;
-		h.prev = lru_head.prev;
-		h.prev.next = h;
-		h.next.prev = h;
+		if(helper != null)
+			helper.shutdown();
 	}
 
-	// request data [0,len)
-	// return some position p where [p,len) need to be filled
-	// (p >= len if nothing needs to be filled)
-	// java: simulate pointer using single-element array
-	int get_data(int index, float[][] data, int len)
+	// forget all slots, waiting for the helper to leave them
+	private void drop_prefetch()
 	{
-		head_t h = head[index];
-		if(h.len > 0) lru_delete(h);
-		int more = len - h.len;
+		for(Prefetch f : prefetch)
+			if(f.row != -1)
+			{
+				f.drop();
+				f.await();
+				f.row = -1;
+			}
+	}
 
-		if(more > 0)
+	// one column computed ahead; row and len belong to the solver thread and
+	// are set before the slot is handed to the helper, done and dropped are
+	// shared with it
+	private final class Prefetch implements Runnable
+	{
+		int row = -1, len, round;
+		float[] data;
+		private boolean done = true, dropped;
+
+		void start(int row, int len)
 		{
-			// free old space
-			while(size < more)
+			this.row = row;
+			this.len = len;
+			if(data == null || data.length < len)
+				data = new float[len];
+			synchronized(this)
 			{
-				head_t old = lru_head.next;
-				lru_delete(old);
-				size += old.len;
-				old.data = null;
-				old.len = 0;
+				done = false;
+				dropped = false;
 			}
+			helper.execute(this);
+		}
 
-			// allocate new space
-			float[] new_data = new float[len];
-			if(h.data != null) System.arraycopy(h.data,0,new_data,0,h.len);
-			h.data = new_data;
-			size -= more;
-			do {int _=h.len; h.len=len; len=_;} while(false);
+		public void run()
+		{
+			boolean skip;
+			synchronized(this)
+			{
+				skip = dropped;
+			}
+			try
+			{
+				if(!skip)
+					fill(data,row,0,len);
+			}
+			finally
+			{
+				synchronized(this)
+				{
+					done = true;
+					notifyAll();
+				}
+			}
 		}
 
-		lru_insert(h);
-		data[0] = h.data;
-		return len;
-	}
+		synchronized boolean is_done()
+		{
+			return done;
+		}
 
-	void swap_index(int i, int j)
-	{
-		if(i==j) return;
-		
-		if(head[i].len > 0) lru_delete(head[i]);
-		if(head[j].len > 0) lru_delete(head[j]);
-		do {float[] _=head[i].data; head[i].data=head[j].data; head[j].data=_;} while(false);
-		do {int _=head[i].len; head[i].len=head[j].len; head[j].len=_;} while(false);
-		if(head[i].len > 0) lru_insert(head[i]);
-		if(head[j].len > 0) lru_insert(head[j]);
+		synchronized void drop()
+		{
+			dropped = true;
+		}
 
-		if(i>j) do {int _=i; i=j; j=_;} while(false);
-		for(head_t h = lru_head.next; h!=lru_head; h=h.next)
+		synchronized void await()
 		{
-			if(h.len > i)
+			boolean interrupted = false;
+			while(!done)
 			{
-				if(h.len > j)
-					do {float _=h.data[i]; h.data[i]=h.data[j]; h.data[j]=_;} while(false);
-				else
+				try
 				{
-					// give up
-					lru_delete(h);
-					size += h.len;
-					h.data = null;
-					h.len = 0;
+					wait();
+				}
+				catch(InterruptedException e)
+				{
+					interrupted = true;
 				}
 			}
+			if(interrupted)
+				Thread.currentThread().interrupt();
 		}
 	}
-}
-
-/**
- * Kernel evaluation<br/>
- * the static method k_function is for doing single kernel evaluation<br/>
- * the constructor of Kernel prepares to calculate the l*l kernel matrix<br/>
- * the member function get_Q is for getting one column from the Q Matrix<br/>
- * @author wangjiewen
- *
- */
-abstract class QMatrix {
-	
-	/**
-	 * getting one column from the Q Matrix
-	 * @param column
-	 * @param len
-	 * @return
-	 */
-	abstract float[] get_Q(int column, int len);
-	
-	/**
-	 * record the value of kernel funtion <br/>
-	 * different type svm have different kernel function
-	 * eg:QD[i] = kernel_function(i,i);
-	 * @return
-	 */
-	abstract double[] get_QD();
-	abstract void swap_index(int i, int j);
-};
-
-abstract class Kernel extends QMatrix {
-	private svm_node[][] x;
-	private final double[] x_square;
-
-	// svm_parameter
-	private final int kernel_type;
-	private final int degree;
-	private final double gamma;
-	private final double coef0;
-
-	abstract float[] get_Q(int column, int len);
-	abstract double[] get_QD();
 
 	void swap_index(int i, int j)
 	{
-		do {svm_node[] _=x[i]; x[i]=x[j]; x[j]=_;} while(false);
-		if(x_square != null) do {double _=x_square[i]; x_square[i]=x_square[j]; x_square[j]=_;} while(false);
+		if(prefetch != null)
+			drop_prefetch();
+		if(rows != null)
+			rows.swap_index(i,j);
+		else
+			do {int _=row[i]; row[i]=row[j]; row[j]=_;} while(false);
 	}
 
-	private static double powi(double base, int times)
+	static double powi(double base, int times)
 	{
 		double tmp = base, ret = 1.0;
 
@@ -180,43 +1478,83 @@ abstract class Kernel extends QMatrix {
 
 	double kernel_function(int i, int j)
 	{
-		switch(kernel_type)
-		{
-			case svm_parameter.LINEAR:
-				return dot(x[i],x[j]);
-			case svm_parameter.POLY:
-				return powi(gamma*dot(x[i],x[j])+coef0,degree);
-			case svm_parameter.RBF:
-				return Math.exp(-gamma*(x_square[i]+x_square[j]-2*dot(x[i],x[j])));
-			case svm_parameter.SIGMOID:
-				return Math.tanh(gamma*dot(x[i],x[j])+coef0);
-			case svm_parameter.PRECOMPUTED:
-				return x[i][(int)(x[j][0].value)].value;
-			default:
-				return 0;	// java
-		}
+		if(rows != null)
+			return rows.kernel_function(i,j);
+		return store.kernel_function(row[i],row[j]);
 	}
 
-	Kernel(int l, svm_node[][] x_, svm_parameter param)
+	// the training vectors as rows of shared, whose store, if any, holds
+	// their kernel
+	Kernel(Packed_Rows.View shared, svm_parameter param)
 	{
-		this.kernel_type = param.kernel_type;
-		this.degree = param.degree;
-		this.gamma = param.gamma;
-		this.coef0 = param.coef0;
+		if(shared.store != null)
+		{
+			rows = null;
+			store = shared.store;
+			row = shared.store_row.clone();
+		}
+		else
+		{
+			rows = new Kernel_Rows(shared.rows,shared.row,param);
+			store = null;
+			row = null;
+		}
 
-		x = (svm_node[][])x_.clone();
+		if(param.nr_thread > 1)
+		{
+			pool = svm.thread_pool(param.nr_thread);
+			fill_threshold = param.fill_threshold > 0 ? param.fill_threshold : 1024;
+			fill_grain = Math.max(fill_threshold/4,64);
+		}
+		else
+		{
+			pool = null;
+			fill_threshold = 0;
+			fill_grain = 0;
+		}
 
-		if(kernel_type == svm_parameter.RBF)
+		if(param.prefetch > 0)
 		{
-			x_square = new double[l];
-			for(int i=0;i<l;i++)
-				x_square[i] = dot(x[i],x[i]);
+			prefetch = new Prefetch[param.prefetch];
+			for(int k=0;k<prefetch.length;k++)
+				prefetch[k] = new Prefetch();
+			helper = svm.prefetch_helper();
 		}
-		else x_square = null;
+		else
+		{
+			prefetch = null;
+			helper = null;
+		}
+	}
+
+	// sum of u[p+k]*v[q+k] for k < n, a branch-free loop the JIT unrolls;
+	// adds the products in the same order as the sparse merge
+	static double dense_dot(double[] u, int p, double[] v, int q, int n)
+	{
+		double sum = 0;
+		for(int k=0;k<n;k++)
+			sum += u[p+k]*v[q+k];
+		return sum;
+	}
+
+	// x holds features 1..x.length with none missing
+	private static boolean is_dense(svm_node[] x)
+	{
+		int n = x.length;
+		return n > 0 && x[0].index == 1 && x[n-1].index == n;
 	}
 
 	static double dot(svm_node[] x, svm_node[] y)
 	{
+		if(is_dense(x) && is_dense(y))
+		{
+			double sum = 0;
+			int n = Math.min(x.length,y.length);
+			for(int k=0;k<n;k++)
+				sum += x[k].value*y[k].value;
+			return sum;
+		}
+
 		double sum = 0;
 		int xlen = x.length;
 		int ylen = y.length;
@@ -260,6 +1598,16 @@ abstract class Kernel extends QMatrix {
 				int ylen = y.length;
 				int i = 0;
 				int j = 0;
+				if(is_dense(x) && is_dense(y))
+				{
+					int n = Math.min(xlen,ylen);
+					for(;i<n;i++)
+					{
+						double d = x[i].value - y[i].value;
+						sum += d*d;
+					}
+					j = i;
+				}
 				while(i < xlen && j < ylen)
 				{
 					if(x[i].index == y[j].index)
@@ -296,6 +1644,8 @@ abstract class Kernel extends QMatrix {
 			case svm_parameter.SIGMOID:
 				return Math.tanh(param.gamma*dot(x,y)+param.coef0);
 			case svm_parameter.PRECOMPUTED:
+				if(param.kernel_file != null)
+					return Mapped_Kernel.lookup(param.kernel_file).get((int)x[0].value,(int)y[0].value);
 				return	x[(int)(y[0].value)].value;
 			default:
 				return 0;	// java
@@ -339,9 +1689,100 @@ class Solver {
 	double[] G_bar;		// gradient, if we treat free variables as 0
 	int l;
 	boolean unshrink;	// XXX
+	svm_solver_stats stats;
+	private long start_time;
+	private int shrink_interval;	// for shrinking == 2
+	private final boolean print_stats;
+	double gap;	// violation of the last working set selection
+
+	// progress reports, progress is null if nobody listens
+	private final svm_progress_interface progress;
+	private final int progress_interval;
+
+	// budget: iterations (0 for default) and a token to stop early
+	private final int iter_budget;
+	private final svm_cancel_token cancel;
+
+	// columns of the next likely working set members to prefetch (0 for none)
+	private final int prefetch;
+
+	// parallel scans and gradient updates, pool is null if serial
+	private final ForkJoinPool pool;
+	private final int scan_threshold;
+
+	// parallel gradient reconstruction: the columns of a batch, and the
+	// copies of those get_Q does not keep, made once a solver
+	private static final int reconstruct_batch = 32;
+	private float[][] batch_column, batch_copy;
+
+	// the passes of the last select_working_set, in the chunks of a
+	// parallel scan merged into [0]; reused from one iteration to the next
+	private final Scan[] up_part, low_part;
+
+	// block SMO (block_size > 2): the variables of the current block and
+	// the solver's state for them, which the pair steps inside the block
+	// work on.
+	private final int block_size;
+	int[] block;
+	double[] block_alpha, block_G, block_C, block_QD;
+	byte[] block_y;
+	float[][] block_Q;	// block_Q[a][b] = Q(block[a],block[b])
 	
 	static final double INF = java.lang.Double.POSITIVE_INFINITY;
 
+	Solver(svm_parameter param)
+	{
+		if(param.nr_thread > 1)
+		{
+			pool = svm.thread_pool(param.nr_thread);
+			scan_threshold = param.scan_threshold > 0 ? param.scan_threshold : 16384;
+		}
+		else
+		{
+			pool = null;
+			scan_threshold = 0;
+		}
+		block_size = param.block_size;
+		progress = param.progress;
+		progress_interval = param.progress_interval > 0 ? param.progress_interval : 1000;
+		iter_budget = param.max_iter;
+		cancel = param.cancel;
+		prefetch = param.prefetch;
+		print_stats = param.print_stats == 1;
+
+		// the selection passes keep enough top violators for
+		// top_violators to leave out the working set, for the block and
+		// for the prefetch
+		int nr_part = pool == null ? 1 : 4*pool.getParallelism();
+		int q = Math.max(block_size > 2 ? block_size : 0,prefetch > 0 ? prefetch+2 : 0);
+		up_part = new Scan[nr_part];
+		low_part = new Scan[nr_part];
+		for(int k=0;k<nr_part;k++)
+		{
+			up_part[k] = new Scan(q);
+			low_part[k] = new Scan(q);
+		}
+	}
+
+	private void report_progress(int iter)
+	{
+		int nr_free = 0;
+		for(int i=0;i<l;i++)
+			if(is_free(i))
+				++nr_free;
+
+		// G of the shrunk variables is stale until reconstructed
+		double obj = Double.NaN;
+		if(active_size == l)
+		{
+			double v = 0;
+			for(int i=0;i<l;i++)
+				v += alpha[i] * (G[i] + p[i]);
+			obj = v/2;
+		}
+		progress.progress("",iter,gap,active_size,nr_free,obj,System.nanoTime()-start_time);
+	}
+
 	double get_C(int i)
 	{
 		return (y[i] > 0)? Cp : Cn;
@@ -353,6 +1794,7 @@ class Solver {
 		else if(alpha[i] <= 0)
 			alpha_status[i] = LOWER_BOUND;
 		else alpha_status[i] = FREE;
+		Q.alpha_status_changed(i);
 	}
 	boolean is_upper_bound(int i) { return alpha_status[i] == UPPER_BOUND; }
 	boolean is_lower_bound(int i) { return alpha_status[i] == LOWER_BOUND; }
@@ -366,6 +1808,8 @@ class Solver {
 		double upper_bound_p;
 		double upper_bound_n;
 		double r;	// for Solver_NU
+		svm_cache_stats cache_stats;
+		svm_solver_stats solver_stats;
 	}
 
 	void swap_index(int i, int j)
@@ -380,45 +1824,188 @@ class Solver {
 		do {double _=G_bar[i]; G_bar[i]=G_bar[j]; G_bar[j]=_;} while(false);
 	}
 
+	// shrinking == 2: shrink more often while it removes much of the active
+	// set, less often when it removes little or when reconstructing the
+	// gradient takes a noticeable part of the time
+	private int next_shrink_interval(int old_active_size)
+	{
+		int base = Math.min(l,1000);
+		double yield = (double)(old_active_size-active_size)/old_active_size;
+		double reconstruct_share = (double)stats.reconstruct_time/(System.nanoTime()-start_time);
+		if(yield < 0.01 || reconstruct_share > 0.1)
+			return (int)Math.min((long)shrink_interval*2,64L*base);
+		if(yield > 0.1)
+			return Math.max(shrink_interval/2,Math.max(base/8,1));
+		return shrink_interval;
+	}
+
 	void reconstruct_gradient()
 	{
 		// reconstruct inactive elements of G from G_bar and free variables
 
 		if(active_size == l) return;
 
+		long time = System.nanoTime();
+		stats.reconstructions++;
+
 		int i,j;
 		int nr_free = 0;
 
 		for(j=active_size;j<l;j++)
 			G[j] = G_bar[j] + p[j];
 
-		for(j=0;j<active_size;j++)
-			if(is_free(j))
-				nr_free++;
+		for(j=0;j<active_size;j++)
+			if(is_free(j))
+				nr_free++;
+
+		if(2*nr_free < active_size)
+			svm.info("\nWARNING: using -h 0 may be faster\n");
+
+		if(pool != null && (long)nr_free*(l-active_size) >= scan_threshold)
+			reconstruct_gradient_parallel(nr_free);
+		else if (nr_free*l > 2*active_size*(l-active_size))
+		{
+			for(i=active_size;i<l;i++)
+			{
+				float[] Q_i = Q.get_Q(i,active_size);
+				for(j=0;j<active_size;j++)
+					if(is_free(j))
+						G[i] += alpha[j] * Q_i[j];
+			}	
+		}
+		else
+		{
+			for(i=0;i<active_size;i++)
+				if(is_free(i))
+				{
+					float[] Q_i = Q.get_Q(i,l);
+					double alpha_i = alpha[i];
+					for(j=active_size;j<l;j++)
+						G[j] += alpha_i * Q_i[j];
+				}
+		}
+
+		stats.reconstruct_time += System.nanoTime()-time;
+	}
+
+	// the loops of reconstruct_gradient on the pool. The cache is not
+	// thread-safe, so batches of columns are fetched here (copied only if
+	// get_Q reuses its arrays), then the threads add them into disjoint
+	// parts of G; every G[k] adds the same terms in the same order as the
+	// serial loops.
+	private void reconstruct_gradient_parallel(int nr_free)
+	{
+		int parallelism = pool.getParallelism();
+		if(batch_column == null)
+			batch_column = new float[reconstruct_batch][];
+		float[][] column = batch_column;
+		if (nr_free*l > 2*active_size*(l-active_size))
+		{
+			// rows of the inactive variables, split between threads
+			for(int first=active_size;first<l;first+=reconstruct_batch)
+			{
+				int n = Math.min(reconstruct_batch,l-first);
+				for(int b=0;b<n;b++)
+					column[b] = batch_column(b,Q.get_Q(first+b,active_size),0,active_size);
+				pool.invoke(new Reconstruct_Task(this,column,null,0,first,first,first+n,
+								 Math.max(n/parallelism,1)));
+			}
+		}
+		else
+		{
+			// columns of the free variables, G[active_size,l) split between threads
+			int[] free = new int[reconstruct_batch];
+			int grain = Math.max((l-active_size)/(4*parallelism),1024);
+			int n = 0;
+			for(int i=0;i<=active_size;i++)
+			{
+				if(n == reconstruct_batch || (i == active_size && n > 0))
+				{
+					pool.invoke(new Reconstruct_Task(this,column,free,n,0,active_size,l,grain));
+					n = 0;
+				}
+				if(i < active_size && is_free(i))
+				{
+					column[n] = batch_column(n,Q.get_Q(i,l),active_size,l);
+					free[n++] = i;
+				}
+			}
+		}
+		Arrays.fill(column,null);
+	}
+
+	// Q_i as column b of a batch: itself if it keeps its values, else its
+	// entries [from,to) copied into a scratch array of the solver
+	private float[] batch_column(int b, float[] Q_i, int from, int to)
+	{
+		if(Q.keeps_columns())
+			return Q_i;
+		if(batch_copy == null)
+			batch_copy = new float[reconstruct_batch][];
+		if(batch_copy[b] == null)
+			batch_copy[b] = new float[l];
+		System.arraycopy(Q_i,from,batch_copy[b],from,to-from);
+		return batch_copy[b];
+	}
+
+	// G[i] for first <= from <= i < to, with Q_i in column[i-first]
+	private void add_free_rows(float[][] column, int first, int from, int to)
+	{
+		for(int i=from;i<to;i++)
+		{
+			float[] Q_i = column[i-first];
+			for(int j=0;j<active_size;j++)
+				if(is_free(j))
+					G[i] += alpha[j] * Q_i[j];
+		}
+	}
+
+	// G[j] for from <= j < to, from the columns of free[0,n) in column[0,n)
+	private void add_free_columns(float[][] column, int[] free, int n, int from, int to)
+	{
+		for(int b=0;b<n;b++)
+		{
+			float[] Q_b = column[b];
+			double alpha_b = alpha[free[b]];
+			for(int j=from;j<to;j++)
+				G[j] += alpha_b * Q_b[j];
+		}
+	}
 
-		if(2*nr_free < active_size)
-			svm.info("\nWARNING: using -h 0 may be faster\n");
+	private static final class Reconstruct_Task extends RecursiveAction
+	{
+		private final Solver solver;
+		private final float[][] column;
+		private final int[] free;	// null for rows
+		private final int n, first, from, to, grain;
 
-		if (nr_free*l > 2*active_size*(l-active_size))
+		Reconstruct_Task(Solver solver, float[][] column, int[] free, int n, int first, int from, int to, int grain)
 		{
-			for(i=active_size;i<l;i++)
-			{
-				float[] Q_i = Q.get_Q(i,active_size);
-				for(j=0;j<active_size;j++)
-					if(is_free(j))
-						G[i] += alpha[j] * Q_i[j];
-			}	
+			this.solver = solver;
+			this.column = column;
+			this.free = free;
+			this.n = n;
+			this.first = first;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
 		}
-		else
+
+		protected void compute()
 		{
-			for(i=0;i<active_size;i++)
-				if(is_free(i))
-				{
-					float[] Q_i = Q.get_Q(i,l);
-					double alpha_i = alpha[i];
-					for(j=active_size;j<l;j++)
-						G[j] += alpha_i * Q_i[j];
-				}
+			if(to-from <= grain)
+			{
+				if(free == null)
+					solver.add_free_rows(column,first,from,to);
+				else
+					solver.add_free_columns(column,free,n,from,to);
+			}
+			else
+			{
+				int mid = (from+to)>>>1;
+				invokeAll(new Reconstruct_Task(solver,column,free,n,first,from,mid,grain),
+					  new Reconstruct_Task(solver,column,free,n,first,mid,to,grain));
+			}
 		}
 	}
 
@@ -435,12 +2022,16 @@ class Solver {
 		this.Cn = Cn;
 		this.eps = eps;
 		this.unshrink = false;
+		this.stats = new svm_solver_stats();
+		this.start_time = System.nanoTime();
+		this.shrink_interval = Math.min(l,1000);
 
 		// initialize alpha_status
 		{
 			alpha_status = new byte[l];
 			for(int i=0;i<l;i++)
 				update_alpha_status(i);
+			Q.set_alpha_status(alpha_status);
 		}
 
 		// initialize active set (for shrinking)
@@ -479,17 +2070,44 @@ class Solver {
 
 		int iter = 0;
 		int max_iter = Math.max(10000000, l>Integer.MAX_VALUE/100 ? Integer.MAX_VALUE : 100*l);
+		if(iter_budget > 0)
+			max_iter = iter_budget;
 		int counter = Math.min(l,1000)+1;
 		int[] working_set = new int[2];
+		int[] likely = prefetch > 0 ? new int[prefetch] : null;
+
+		if(block_size > 2)
+		{
+			int q = Math.min(block_size,l);
+			block = new int[q];
+			block_alpha = new double[q];
+			block_G = new double[q];
+			block_y = new byte[q];
+			block_C = new double[q];
+			block_QD = new double[q];
+			block_Q = new float[q][q];
+		}
 
 		while(iter < max_iter)
 		{
+			if(cancel != null && cancel.is_cancelled())
+				break;
+
 			// show progress and do shrinking
 
 			if(--counter == 0)
 			{
 				counter = Math.min(l,1000);
-				if(shrinking!=0) do_shrinking();
+				if(shrinking!=0)
+				{
+					int old_active_size = active_size;
+					do_shrinking();
+					stats.shrink_calls++;
+					if(active_size < old_active_size)
+						stats.shrunk += old_active_size - active_size;
+					if(shrinking == 2)
+						counter = shrink_interval = next_shrink_interval(old_active_size);
+				}
 				svm.info(".");
 			}
 
@@ -501,7 +2119,10 @@ class Solver {
 				active_size = l;
 				svm.info("*");
 				if(select_working_set(working_set)!=0)
+				{
+					stats.converged = true;
 					break;
+				}
 				else
 					counter = 1;	// do shrinking next iteration
 			}
@@ -511,6 +2132,20 @@ class Solver {
 
 			++iter;
 
+			if(progress != null && iter % progress_interval == 0)
+				report_progress(iter);
+
+			if(block != null)
+			{
+				solve_block(i,j);
+				continue;
+			}
+
+			// the next most violating variables found by the selection
+			// are the likely next working set members
+			if(likely != null)
+				Q.prefetch(likely,top_violators(i,j,likely,0,likely.length,up_part[0],low_part[0]),active_size);
+
 			// update alpha[i] and alpha[j], handle bounds carefully
 
 			float[] Q_i = Q.get_Q(i,active_size);
@@ -522,223 +2157,522 @@ class Solver {
 			double old_alpha_i = alpha[i];
 			double old_alpha_j = alpha[j];
 
-			if(y[i]!=y[j])
+			solve_pair(alpha,G,y,QD,i,j,Q_i[j],C_i,C_j);
+
+			// update G
+
+			double delta_alpha_i = alpha[i] - old_alpha_i;
+			double delta_alpha_j = alpha[j] - old_alpha_j;
+
+			add_columns(G,active_size,Q_i,delta_alpha_i,Q_j,delta_alpha_j);
+
+			// update alpha_status and G_bar
+
 			{
-				double quad_coef = QD[i]+QD[j]+2*Q_i[j];
-				if (quad_coef <= 0)
-					quad_coef = 1e-12;
-				double delta = (-G[i]-G[j])/quad_coef;
-				double diff = alpha[i] - alpha[j];
-				alpha[i] += delta;
-				alpha[j] += delta;
-			
-				if(diff > 0)
+				boolean ui = is_upper_bound(i);
+				boolean uj = is_upper_bound(j);
+				update_alpha_status(i);
+				update_alpha_status(j);
+				if(ui != is_upper_bound(i))
 				{
-					if(alpha[j] < 0)
-					{
-						alpha[j] = 0;
-						alpha[i] = diff;
-					}
+					Q_i = Q.get_Q(i,l);
+					add_columns(G_bar,l,Q_i,ui ? -C_i : C_i,null,0);
 				}
-				else
+
+				if(uj != is_upper_bound(j))
 				{
-					if(alpha[i] < 0)
-					{
-						alpha[i] = 0;
-						alpha[j] = -diff;
-					}
+					Q_j = Q.get_Q(j,l);
+					add_columns(G_bar,l,Q_j,uj ? -C_j : C_j,null,0);
+				}
+			}
+
+		}
+		
+		if(!stats.converged)
+		{
+			// stopped early, the current alpha is still feasible
+			if(active_size < l)
+			{
+				// reconstruct the whole gradient to calculate objective value
+				reconstruct_gradient();
+				active_size = l;
+				svm.info("*");
+			}
+			if(iter >= max_iter)
+				svm.info("\nWARNING: reaching max number of iterations");
+			else
+				svm.info("\nWARNING: training stopped before convergence");
+		}
+
+		if(progress != null)
+			report_progress(iter);
+
+		// calculate rho
+
+		si.rho = calculate_rho();
+
+		// calculate objective value
+		{
+			double v = 0;
+			int i;
+			for(i=0;i<l;i++)
+				v += alpha[i] * (G[i] + p[i]);
+
+			si.obj = v/2;
+		}
+
+		// put back the solution
+		{
+			for(int i=0;i<l;i++)
+				alpha_[active_set[i]] = alpha[i];
+		}
+
+		si.upper_bound_p = Cp;
+		si.upper_bound_n = Cn;
+
+		svm.info("\noptimization finished, #iter = "+iter+"\n");
+		stats.iterations = iter;
+		si.solver_stats = stats;
+		si.cache_stats = Q.cache_stats();
+		Q.end_prefetch();
+		if(print_stats)
+		{
+			svm.info(si.cache_stats+"\n");
+			if(shrinking != 0)
+				svm.info(stats+"\n");
+		}
+	}
+
+	// return 1 if already optimal, return 0 otherwise
+	int select_working_set(int[] working_set)
+	{
+		// return i,j such that
+		// i: maximizes -y_i * grad(f)_i, i in I_up(\alpha)
+		// j: mimimizes the decrease of obj value
+		//    (if quadratic coefficeint <= 0, replace it with tau)
+		//    -y_j*grad(f)_j < -y_i*grad(f)_i, j in I_low(\alpha)
+		
+		Scan up = scan(null,null,null);
+		double Gmax = up.Gmax;
+		int Gmax_idx = up.Gmax_idx;
+	
+		int i = Gmax_idx;
+		float[] Q_i = null;
+		if(i != -1) // null Q_i not accessed: Gmax=-INF if i=-1
+			Q_i = Q.get_Q(i,active_size);
+	
+		Scan low = scan(up,Q_i,null);
+		double Gmax2 = low.Gmax2;
+		int Gmin_idx = low.Gmin_idx;
+
+		gap = Gmax+Gmax2;
+		if(gap < eps)
+			return 1;
+
+		working_set[0] = Gmax_idx;
+		working_set[1] = Gmin_idx;
+		return 0;
+	}
+
+	// solve the sub-problem of alpha[i] and alpha[j] alone, all other
+	// variables fixed; Q_ij is the kernel entry of the two
+	static void solve_pair(double[] alpha, double[] G, byte[] y, double[] QD,
+			       int i, int j, float Q_ij, double C_i, double C_j)
+	{
+		if(y[i]!=y[j])
+		{
+			double quad_coef = QD[i]+QD[j]+2*Q_ij;
+			if (quad_coef <= 0)
+				quad_coef = 1e-12;
+			double delta = (-G[i]-G[j])/quad_coef;
+			double diff = alpha[i] - alpha[j];
+			alpha[i] += delta;
+			alpha[j] += delta;
+		
+			if(diff > 0)
+			{
+				if(alpha[j] < 0)
+				{
+					alpha[j] = 0;
+					alpha[i] = diff;
 				}
-				if(diff > C_i - C_j)
+			}
+			else
+			{
+				if(alpha[i] < 0)
 				{
-					if(alpha[i] > C_i)
-					{
-						alpha[i] = C_i;
-						alpha[j] = C_i - diff;
-					}
+					alpha[i] = 0;
+					alpha[j] = -diff;
 				}
-				else
+			}
+			if(diff > C_i - C_j)
+			{
+				if(alpha[i] > C_i)
 				{
-					if(alpha[j] > C_j)
-					{
-						alpha[j] = C_j;
-						alpha[i] = C_j + diff;
-					}
+					alpha[i] = C_i;
+					alpha[j] = C_i - diff;
 				}
 			}
 			else
 			{
-				double quad_coef = QD[i]+QD[j]-2*Q_i[j];
-				if (quad_coef <= 0)
-					quad_coef = 1e-12;
-				double delta = (G[i]-G[j])/quad_coef;
-				double sum = alpha[i] + alpha[j];
-				alpha[i] -= delta;
-				alpha[j] += delta;
-
-				if(sum > C_i)
+				if(alpha[j] > C_j)
 				{
-					if(alpha[i] > C_i)
-					{
-						alpha[i] = C_i;
-						alpha[j] = sum - C_i;
-					}
+					alpha[j] = C_j;
+					alpha[i] = C_j + diff;
 				}
-				else
+			}
+		}
+		else
+		{
+			double quad_coef = QD[i]+QD[j]-2*Q_ij;
+			if (quad_coef <= 0)
+				quad_coef = 1e-12;
+			double delta = (G[i]-G[j])/quad_coef;
+			double sum = alpha[i] + alpha[j];
+			alpha[i] -= delta;
+			alpha[j] += delta;
+
+			if(sum > C_i)
+			{
+				if(alpha[i] > C_i)
 				{
-					if(alpha[j] < 0)
-					{
-						alpha[j] = 0;
-						alpha[i] = sum;
-					}
+					alpha[i] = C_i;
+					alpha[j] = sum - C_i;
 				}
-				if(sum > C_j)
+			}
+			else
+			{
+				if(alpha[j] < 0)
 				{
-					if(alpha[j] > C_j)
-					{
-						alpha[j] = C_j;
-						alpha[i] = sum - C_j;
-					}
+					alpha[j] = 0;
+					alpha[i] = sum;
 				}
-				else
+			}
+			if(sum > C_j)
+			{
+				if(alpha[j] > C_j)
 				{
-					if(alpha[i] < 0)
-					{
-						alpha[i] = 0;
-						alpha[j] = sum;
-					}
+					alpha[j] = C_j;
+					alpha[i] = sum - C_j;
+				}
+			}
+			else
+			{
+				if(alpha[i] < 0)
+				{
+					alpha[i] = 0;
+					alpha[j] = sum;
 				}
 			}
+		}
+	}
 
-			// update G
+	// one iteration of block SMO: grow the working set {i,j} with the next
+	// most violating variables, solve the sub-problem of the block with pair
+	// steps on its own copy of the state, then update G and G_bar once
+	void solve_block(int i, int j)
+	{
+		int n = select_block(i,j);
+		for(int a=0;a<n;a++)
+		{
+			int k = block[a];
+			float[] Q_k = Q.get_Q(k,active_size);
+			for(int b=0;b<n;b++)
+				block_Q[a][b] = Q_k[block[b]];
+			block_alpha[a] = alpha[k];
+			block_G[a] = G[k];
+			block_y[a] = y[k];
+			block_C[a] = get_C(k);
+			block_QD[a] = QD[k];
+		}
 
-			double delta_alpha_i = alpha[i] - old_alpha_i;
-			double delta_alpha_j = alpha[j] - old_alpha_j;
+		// the first step is on the pair select_working_set chose, as without
+		// blocks; its violation alone may be below eps in Solver_NU
+		int[] working_set = {0,1};
+		for(int iter=0;iter<100*n;iter++)
+		{
+			if(iter > 0 && select_in_block(n,working_set)!=0)
+				break;
+			int a = working_set[0];
+			int b = working_set[1];
+			double old_alpha_a = block_alpha[a];
+			double old_alpha_b = block_alpha[b];
+			solve_pair(block_alpha,block_G,block_y,block_QD,a,b,block_Q[a][b],block_C[a],block_C[b]);
+			double delta_alpha_a = block_alpha[a] - old_alpha_a;
+			double delta_alpha_b = block_alpha[b] - old_alpha_b;
+			float[] Q_a = block_Q[a];
+			float[] Q_b = block_Q[b];
+			for(int c=0;c<n;c++)
+				block_G[c] += Q_a[c]*delta_alpha_a + Q_b[c]*delta_alpha_b;
+		}
+
+		// update G, two columns at a time
 
-			for(int k=0;k<active_size;k++)
+		int prev = -1;
+		for(int a=0;a<n;a++)
+		{
+			if(block_alpha[a] == alpha[block[a]])
+				continue;
+			if(prev == -1)
+				prev = a;
+			else
 			{
-				G[k] += Q_i[k]*delta_alpha_i + Q_j[k]*delta_alpha_j;
+				float[] Q_p = Q.get_Q(block[prev],active_size);
+				float[] Q_a = Q.get_Q(block[a],active_size);
+				add_columns(G,active_size,Q_p,block_alpha[prev]-alpha[block[prev]],
+					    Q_a,block_alpha[a]-alpha[block[a]]);
+				prev = -1;
 			}
+		}
+		if(prev != -1)
+			add_columns(G,active_size,Q.get_Q(block[prev],active_size),
+				    block_alpha[prev]-alpha[block[prev]],null,0);
 
-			// update alpha_status and G_bar
+		// update alpha, alpha_status and G_bar
+
+		for(int a=0;a<n;a++)
+		{
+			int k = block[a];
+			boolean u = is_upper_bound(k);
+			alpha[k] = block_alpha[a];
+			update_alpha_status(k);
+			if(u != is_upper_bound(k))
+				add_columns(G_bar,l,Q.get_Q(k,l),u ? -block_C[a] : block_C[a],null,0);
+		}
+	}
+
+	// fill block with i, j and then alternately the most violating
+	// variables of I_up and of I_low, as the passes of select_working_set
+	// found them; return the size of the block
+	int select_block(int i, int j)
+	{
+		block[0] = i;
+		block[1] = j;
+		return 2+top_violators(i,j,block,2,block.length-2,up_part[0],low_part[0]);
+	}
 
+	// put alternately the most violating variables of I_up and of I_low,
+	// other than i and j, into out[from,from+q) without repeats; return how
+	// many were put. They come from the lists of up and low, collected at
+	// least q+2 deep.
+	static int top_violators(int i, int j, int[] out, int from, int q, Scan up, Scan low)
+	{
+		int a = 0, b = 0;	// next of each list
+		int ra = 0, rb = 0;	// taken of each list, i and j left out
+		int n = 0;
+		while(n < q && ((a < up.nr_up && ra < q) || (b < low.nr_low && rb < q)))
+		{
+			while(a < up.nr_up && (up.up_idx[a] == i || up.up_idx[a] == j))
+				a++;
+			while(b < low.nr_low && (low.low_idx[b] == i || low.low_idx[b] == j))
+				b++;
+			if(a < up.nr_up && ra < q)
 			{
-				boolean ui = is_upper_bound(i);
-				boolean uj = is_upper_bound(j);
-				update_alpha_status(i);
-				update_alpha_status(j);
-				int k;
-				if(ui != is_upper_bound(i))
+				if(!contains(out,from,from+n,up.up_idx[a]))
+					out[from+n++] = up.up_idx[a];
+				a++;
+				ra++;
+			}
+			if(n < q && b < low.nr_low && rb < q)
+			{
+				if(!contains(out,from,from+n,low.low_idx[b]))
+					out[from+n++] = low.low_idx[b];
+				b++;
+				rb++;
+			}
+		}
+		return n;
+	}
+
+	private static boolean contains(int[] a, int from, int to, int v)
+	{
+		for(int k=from;k<to;k++)
+			if(a[k] == v)
+				return true;
+		return false;
+	}
+
+	// keep idx[0,n) the variables with the largest val, in decreasing order
+	private static int insert_top(int[] idx, double[] val, int n, int t, double v)
+	{
+		if(n == idx.length && v <= val[n-1])
+			return n;
+		int k = n < idx.length ? n++ : n-1;
+		for(;k>0 && val[k-1] < v;k--)
+		{
+			idx[k] = idx[k-1];
+			val[k] = val[k-1];
+		}
+		idx[k] = t;
+		val[k] = v;
+		return n;
+	}
+
+	// select_working_set among the n variables of the block, on the block's
+	// copy of the state; returns positions in block
+	int select_in_block(int n, int[] working_set)
+	{
+		double Gmax = -INF;
+		double Gmax2 = -INF;
+		int Gmax_idx = -1;
+		int Gmin_idx = -1;
+		double obj_diff_min = INF;
+
+		for(int t=0;t<n;t++)
+			if(block_y[t]==+1)
+			{
+				if(block_alpha[t] < block_C[t] && -block_G[t] >= Gmax)
 				{
-					Q_i = Q.get_Q(i,l);
-					if(ui)
-						for(k=0;k<l;k++)
-							G_bar[k] -= C_i * Q_i[k];
-					else
-						for(k=0;k<l;k++)
-							G_bar[k] += C_i * Q_i[k];
+					Gmax = -block_G[t];
+					Gmax_idx = t;
 				}
-
-				if(uj != is_upper_bound(j))
+			}
+			else
+			{
+				if(block_alpha[t] > 0 && block_G[t] >= Gmax)
 				{
-					Q_j = Q.get_Q(j,l);
-					if(uj)
-						for(k=0;k<l;k++)
-							G_bar[k] -= C_j * Q_j[k];
-					else
-						for(k=0;k<l;k++)
-							G_bar[k] += C_j * Q_j[k];
+					Gmax = block_G[t];
+					Gmax_idx = t;
 				}
 			}
 
-		}
-		
-		if(iter >= max_iter)
+		int i = Gmax_idx;
+		for(int j=0;j<n;j++)
 		{
-			if(active_size < l)
+			double G_j, quad_coef;
+			if(block_y[j]==+1)
 			{
-				// reconstruct the whole gradient to calculate objective value
-				reconstruct_gradient();
-				active_size = l;
-				svm.info("*");
+				if(block_alpha[j] <= 0)
+					continue;
+				G_j = block_G[j];
+			}
+			else
+			{
+				if(block_alpha[j] >= block_C[j])
+					continue;
+				G_j = -block_G[j];
+			}
+			if(G_j >= Gmax2)
+				Gmax2 = G_j;
+			double grad_diff = Gmax+G_j;
+			if(grad_diff > 0)
+			{
+				quad_coef = block_QD[i]+block_QD[j]-2.0*block_y[i]*block_y[j]*block_Q[i][j];
+				double obj_diff = -(grad_diff*grad_diff)/(quad_coef > 0 ? quad_coef : 1e-12);
+				if(obj_diff <= obj_diff_min)
+				{
+					Gmin_idx = j;
+					obj_diff_min = obj_diff;
+				}
 			}
-			svm.info("\nWARNING: reaching max number of iterations");
 		}
 
-		// calculate rho
+		if(Gmax+Gmax2 < eps || Gmin_idx == -1)
+			return 1;
 
-		si.rho = calculate_rho();
+		working_set[0] = Gmax_idx;
+		working_set[1] = Gmin_idx;
+		return 0;
+	}
 
-		// calculate objective value
-		{
-			double v = 0;
-			int i;
-			for(i=0;i<l;i++)
-				v += alpha[i] * (G[i] + p[i]);
+	// v[k] += Q_i[k]*a + Q_j[k]*b for k < n, or v[k] += a*Q_i[k] if Q_j is
+	// null; chunks of a long v are updated on the pool. Each v[k] is computed
+	// the same way either way.
+	void add_columns(double[] v, int n, float[] Q_i, double a, float[] Q_j, double b)
+	{
+		if(pool == null || n < scan_threshold)
+			add_columns(v,0,n,Q_i,a,Q_j,b);
+		else
+			pool.invoke(new Add_Task(v,Q_i,a,Q_j,b,0,n,Math.max(n/(4*pool.getParallelism()),1024)));
+	}
 
-			si.obj = v/2;
-		}
+	private static void add_columns(double[] v, int from, int to, float[] Q_i, double a, float[] Q_j, double b)
+	{
+		if(Q_j != null)
+			for(int k=from;k<to;k++)
+				v[k] += Q_i[k]*a + Q_j[k]*b;
+		else
+			for(int k=from;k<to;k++)
+				v[k] += a*Q_i[k];
+	}
 
-		// put back the solution
+	private static final class Add_Task extends RecursiveAction
+	{
+		private final double[] v;
+		private final float[] Q_i, Q_j;
+		private final double a, b;
+		private final int from, to, grain;
+
+		Add_Task(double[] v, float[] Q_i, double a, float[] Q_j, double b, int from, int to, int grain)
 		{
-			for(int i=0;i<l;i++)
-				alpha_[active_set[i]] = alpha[i];
+			this.v = v;
+			this.Q_i = Q_i;
+			this.a = a;
+			this.Q_j = Q_j;
+			this.b = b;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
 		}
 
-		si.upper_bound_p = Cp;
-		si.upper_bound_n = Cn;
-
-		svm.info("\noptimization finished, #iter = "+iter+"\n");
+		protected void compute()
+		{
+			if(to-from <= grain)
+				add_columns(v,from,to,Q_i,a,Q_j,b);
+			else
+			{
+				int mid = (from+to)>>>1;
+				invokeAll(new Add_Task(v,Q_i,a,Q_j,b,from,mid,grain),
+					  new Add_Task(v,Q_i,a,Q_j,b,mid,to,grain));
+			}
+		}
 	}
 
-	// return 1 if already optimal, return 0 otherwise
-	int select_working_set(int[] working_set)
+	// first pass of select_working_set over [from,to): the maximal violator
+	void scan_up(int from, int to, Scan s)
 	{
-		// return i,j such that
-		// i: maximizes -y_i * grad(f)_i, i in I_up(\alpha)
-		// j: mimimizes the decrease of obj value
-		//    (if quadratic coefficeint <= 0, replace it with tau)
-		//    -y_j*grad(f)_j < -y_i*grad(f)_i, j in I_low(\alpha)
-		
-		double Gmax = -INF;
-		double Gmax2 = -INF;
-		int Gmax_idx = -1;
-		int Gmin_idx = -1;
-		double obj_diff_min = INF;
-	
-		for(int t=0;t<active_size;t++)
+		for(int t=from;t<to;t++)
 			if(y[t]==+1)	
 			{
 				if(!is_upper_bound(t))
-					if(-G[t] >= Gmax)
+				{
+					if(-G[t] >= s.Gmax)
 					{
-						Gmax = -G[t];
-						Gmax_idx = t;
+						s.Gmax = -G[t];
+						s.Gmax_idx = t;
 					}
+					s.up(t,-G[t]);
+				}
 			}
 			else
 			{
 				if(!is_lower_bound(t))
-					if(G[t] >= Gmax)
+				{
+					if(G[t] >= s.Gmax)
 					{
-						Gmax = G[t];
-						Gmax_idx = t;
+						s.Gmax = G[t];
+						s.Gmax_idx = t;
 					}
+					s.up(t,G[t]);
+				}
 			}
-	
-		int i = Gmax_idx;
-		float[] Q_i = null;
-		if(i != -1) // null Q_i not accessed: Gmax=-INF if i=-1
-			Q_i = Q.get_Q(i,active_size);
-	
-		for(int j=0;j<active_size;j++)
+	}
+
+	// second pass over [from,to) after the first one found up
+	void scan_low(Scan up, float[] Q_i, float[] Q_in, int from, int to, Scan s)
+	{
+		double Gmax = up.Gmax;
+		int i = up.Gmax_idx;
+		for(int j=from;j<to;j++)
 		{
 			if(y[j]==+1)
 			{
 				if (!is_lower_bound(j))
 				{
 					double grad_diff=Gmax+G[j];
-					if (G[j] >= Gmax2)
-						Gmax2 = G[j];
+					if (G[j] >= s.Gmax2)
+						s.Gmax2 = G[j];
+					s.low(j,G[j]);
 					if (grad_diff > 0)
 					{
 						double obj_diff; 
@@ -748,10 +2682,10 @@ class Solver {
 						else
 							obj_diff = -(grad_diff*grad_diff)/1e-12;
 	
-						if (obj_diff <= obj_diff_min)
+						if (obj_diff <= s.obj_diff_min)
 						{
-							Gmin_idx=j;
-							obj_diff_min = obj_diff;
+							s.Gmin_idx=j;
+							s.obj_diff_min = obj_diff;
 						}
 					}
 				}
@@ -761,8 +2695,9 @@ class Solver {
 				if (!is_upper_bound(j))
 				{
 					double grad_diff= Gmax-G[j];
-					if (-G[j] >= Gmax2)
-						Gmax2 = -G[j];
+					if (-G[j] >= s.Gmax2)
+						s.Gmax2 = -G[j];
+					s.low(j,-G[j]);
 					if (grad_diff > 0)
 					{
 						double obj_diff; 
@@ -772,22 +2707,155 @@ class Solver {
 						else
 							obj_diff = -(grad_diff*grad_diff)/1e-12;
 	
-						if (obj_diff <= obj_diff_min)
+						if (obj_diff <= s.obj_diff_min)
 						{
-							Gmin_idx=j;
-							obj_diff_min = obj_diff;
+							s.Gmin_idx=j;
+							s.obj_diff_min = obj_diff;
 						}
 					}
 				}
 			}
 		}
+	}
 
-		if(Gmax+Gmax2 < eps)
-			return 1;
+	// what select_working_set looks for in a part of the active set; Solver_NU
+	// keeps the y = +1 side in Gmax, Gmax2 and Gmax_idx, the y = -1 side in
+	// Gmaxn, Gmaxn2 and Gmaxn_idx
+	static final class Scan
+	{
+		double Gmax = -INF, Gmax2 = -INF;
+		int Gmax_idx = -1;
+		double Gmaxn = -INF, Gmaxn2 = -INF;
+		int Gmaxn_idx = -1;
+		double obj_diff_min = INF;
+		int Gmin_idx = -1;
 
-		working_set[0] = Gmax_idx;
-		working_set[1] = Gmin_idx;
-		return 0;
+		// the q most violating variables of I_up and of I_low that the
+		// pass went through, best first (none collected if q is 0)
+		final int[] up_idx, low_idx;
+		final double[] up_val, low_val;
+		int nr_up, nr_low;
+
+		Scan(int q)
+		{
+			up_idx = q > 0 ? new int[q] : null;
+			up_val = q > 0 ? new double[q] : null;
+			low_idx = q > 0 ? new int[q] : null;
+			low_val = q > 0 ? new double[q] : null;
+		}
+
+		void reset()
+		{
+			Gmax = Gmax2 = Gmaxn = Gmaxn2 = -INF;
+			Gmax_idx = Gmaxn_idx = Gmin_idx = -1;
+			obj_diff_min = INF;
+			nr_up = nr_low = 0;
+		}
+
+		void up(int t, double v)
+		{
+			if(up_idx != null)
+				nr_up = insert_top(up_idx,up_val,nr_up,t,v);
+		}
+
+		void low(int t, double v)
+		{
+			if(low_idx != null)
+				nr_low = insert_top(low_idx,low_val,nr_low,t,v);
+		}
+
+		// fold in the scan of the range right after this one; ties go to
+		// the larger index, as in a single scan
+		void merge(Scan s)
+		{
+			if(s.Gmax_idx != -1 && s.Gmax >= Gmax)
+			{
+				Gmax = s.Gmax;
+				Gmax_idx = s.Gmax_idx;
+			}
+			if(s.Gmaxn_idx != -1 && s.Gmaxn >= Gmaxn)
+			{
+				Gmaxn = s.Gmaxn;
+				Gmaxn_idx = s.Gmaxn_idx;
+			}
+			if(s.Gmax2 >= Gmax2)
+				Gmax2 = s.Gmax2;
+			if(s.Gmaxn2 >= Gmaxn2)
+				Gmaxn2 = s.Gmaxn2;
+			if(s.Gmin_idx != -1 && s.obj_diff_min <= obj_diff_min)
+			{
+				obj_diff_min = s.obj_diff_min;
+				Gmin_idx = s.Gmin_idx;
+			}
+			for(int k=0;k<s.nr_up;k++)
+				up(s.up_idx[k],s.up_val[k]);
+			for(int k=0;k<s.nr_low;k++)
+				low(s.low_idx[k],s.low_val[k]);
+		}
+	}
+
+	// scan the whole active set, the first pass if up is null. Large active
+	// sets are cut into chunks scanned on the pool and merged in index
+	// order, which finds the same working set as a single scan.
+	Scan scan(Scan up, float[] Q_i, float[] Q_in)
+	{
+		Scan[] part = up == null ? up_part : low_part;
+		if(pool == null || active_size < scan_threshold)
+		{
+			Scan s = part[0];
+			s.reset();
+			if(up == null)
+				scan_up(0,active_size,s);
+			else
+				scan_low(up,Q_i,Q_in,0,active_size,s);
+			return s;
+		}
+		pool.invoke(new Scan_Task(this,up,Q_i,Q_in,part,0,part.length));
+		for(int k=1;k<part.length;k++)
+			part[0].merge(part[k]);
+		return part[0];
+	}
+
+	private static final class Scan_Task extends RecursiveAction
+	{
+		private final Solver solver;
+		private final Scan up;
+		private final float[] Q_i, Q_in;
+		private final Scan[] part;
+		private final int lo, hi;	// chunks part[lo,hi)
+
+		Scan_Task(Solver solver, Scan up, float[] Q_i, float[] Q_in, Scan[] part, int lo, int hi)
+		{
+			this.solver = solver;
+			this.up = up;
+			this.Q_i = Q_i;
+			this.Q_in = Q_in;
+			this.part = part;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected void compute()
+		{
+			if(hi-lo == 1)
+			{
+				long size = solver.active_size;
+				int from = (int)(size*lo/part.length);
+				int to = (int)(size*(lo+1)/part.length);
+				Scan s = part[lo];
+				s.reset();
+				if(up == null)
+					solver.scan_up(from,to,s);
+				else
+					solver.scan_low(up,Q_i,Q_in,from,to,s);
+			}
+			else
+			{
+				int mid = (lo+hi)>>>1;
+				invokeAll(new Scan_Task(solver,up,Q_i,Q_in,part,lo,mid),
+					  new Scan_Task(solver,up,Q_i,Q_in,part,mid,hi));
+			}
+		}
 	}
 
 	private boolean be_shrunk(int i, double Gmax1, double Gmax2)
@@ -919,6 +2987,11 @@ final class Solver_NU extends Solver
 {
 	private SolutionInfo si;
 
+	Solver_NU(svm_parameter param)
+	{
+		super(param);
+	}
+
 	void Solve(int l, QMatrix Q, double[] p, byte[] y,
 		   double[] alpha, double Cp, double Cn, double eps,
 		   SolutionInfo si, int shrinking)
@@ -936,55 +3009,84 @@ final class Solver_NU extends Solver
 		//    (if quadratic coefficeint <= 0, replace it with tau)
 		//    -y_j*grad(f)_j < -y_i*grad(f)_i, j in I_low(\alpha)
 	
-		double Gmaxp = -INF;
-		double Gmaxp2 = -INF;
-		int Gmaxp_idx = -1;
+		Scan up = scan(null,null,null);
+		double Gmaxp = up.Gmax;
+		int Gmaxp_idx = up.Gmax_idx;
+		double Gmaxn = up.Gmaxn;
+		int Gmaxn_idx = up.Gmaxn_idx;
 	
-		double Gmaxn = -INF;
-		double Gmaxn2 = -INF;
-		int Gmaxn_idx = -1;
+		int ip = Gmaxp_idx;
+		int in = Gmaxn_idx;
+		float[] Q_ip = null;
+		float[] Q_in = null;
+		if(ip != -1) // null Q_ip not accessed: Gmaxp=-INF if ip=-1
+			Q_ip = Q.get_Q(ip,active_size);
+		if(in != -1)
+			Q_in = Q.get_Q(in,active_size);
 	
-		int Gmin_idx = -1;
-		double obj_diff_min = INF;
+		Scan low = scan(up,Q_ip,Q_in);
+		double Gmaxp2 = low.Gmax2;
+		double Gmaxn2 = low.Gmaxn2;
+		int Gmin_idx = low.Gmin_idx;
+
+		gap = Math.max(Gmaxp+Gmaxp2,Gmaxn+Gmaxn2);
+		if(gap < eps)
+			return 1;
+	
+		if(y[Gmin_idx] == +1)
+			working_set[0] = Gmaxp_idx;
+		else
+			working_set[0] = Gmaxn_idx;
+		working_set[1] = Gmin_idx;
 	
-		for(int t=0;t<active_size;t++)
+		return 0;
+	}
+
+	void scan_up(int from, int to, Scan s)
+	{
+		for(int t=from;t<to;t++)
 			if(y[t]==+1)
 			{
 				if(!is_upper_bound(t))
-					if(-G[t] >= Gmaxp)
+				{
+					if(-G[t] >= s.Gmax)
 					{
-						Gmaxp = -G[t];
-						Gmaxp_idx = t;
+						s.Gmax = -G[t];
+						s.Gmax_idx = t;
 					}
+					s.up(t,-G[t]);
+				}
 			}
 			else
 			{
 				if(!is_lower_bound(t))
-					if(G[t] >= Gmaxn)
+				{
+					if(G[t] >= s.Gmaxn)
 					{
-						Gmaxn = G[t];
-						Gmaxn_idx = t;
+						s.Gmaxn = G[t];
+						s.Gmaxn_idx = t;
 					}
+					s.up(t,G[t]);
+				}
 			}
-	
-		int ip = Gmaxp_idx;
-		int in = Gmaxn_idx;
-		float[] Q_ip = null;
-		float[] Q_in = null;
-		if(ip != -1) // null Q_ip not accessed: Gmaxp=-INF if ip=-1
-			Q_ip = Q.get_Q(ip,active_size);
-		if(in != -1)
-			Q_in = Q.get_Q(in,active_size);
-	
-		for(int j=0;j<active_size;j++)
+	}
+
+	void scan_low(Scan up, float[] Q_ip, float[] Q_in, int from, int to, Scan s)
+	{
+		double Gmaxp = up.Gmax;
+		double Gmaxn = up.Gmaxn;
+		int ip = up.Gmax_idx;
+		int in = up.Gmaxn_idx;
+		for(int j=from;j<to;j++)
 		{
 			if(y[j]==+1)
 			{
 				if (!is_lower_bound(j))	
 				{
 					double grad_diff=Gmaxp+G[j];
-					if (G[j] >= Gmaxp2)
-						Gmaxp2 = G[j];
+					if (G[j] >= s.Gmax2)
+						s.Gmax2 = G[j];
+					s.low(j,G[j]);
 					if (grad_diff > 0)
 					{
 						double obj_diff; 
@@ -994,10 +3096,10 @@ final class Solver_NU extends Solver
 						else
 							obj_diff = -(grad_diff*grad_diff)/1e-12;
 	
-						if (obj_diff <= obj_diff_min)
+						if (obj_diff <= s.obj_diff_min)
 						{
-							Gmin_idx=j;
-							obj_diff_min = obj_diff;
+							s.Gmin_idx=j;
+							s.obj_diff_min = obj_diff;
 						}
 					}
 				}
@@ -1007,8 +3109,9 @@ final class Solver_NU extends Solver
 				if (!is_upper_bound(j))
 				{
 					double grad_diff=Gmaxn-G[j];
-					if (-G[j] >= Gmaxn2)
-						Gmaxn2 = -G[j];
+					if (-G[j] >= s.Gmaxn2)
+						s.Gmaxn2 = -G[j];
+					s.low(j,-G[j]);
 					if (grad_diff > 0)
 					{
 						double obj_diff; 
@@ -1018,25 +3121,90 @@ final class Solver_NU extends Solver
 						else
 							obj_diff = -(grad_diff*grad_diff)/1e-12;
 	
-						if (obj_diff <= obj_diff_min)
+						if (obj_diff <= s.obj_diff_min)
 						{
-							Gmin_idx=j;
-							obj_diff_min = obj_diff;
+							s.Gmin_idx=j;
+							s.obj_diff_min = obj_diff;
 						}
 					}
 				}
 			}
 		}
+	}
+
+	int select_in_block(int n, int[] working_set)
+	{
+		double Gmaxp = -INF;
+		double Gmaxp2 = -INF;
+		int Gmaxp_idx = -1;
+
+		double Gmaxn = -INF;
+		double Gmaxn2 = -INF;
+		int Gmaxn_idx = -1;
+
+		int Gmin_idx = -1;
+		double obj_diff_min = INF;
+
+		for(int t=0;t<n;t++)
+			if(block_y[t]==+1)
+			{
+				if(block_alpha[t] < block_C[t] && -block_G[t] >= Gmaxp)
+				{
+					Gmaxp = -block_G[t];
+					Gmaxp_idx = t;
+				}
+			}
+			else
+			{
+				if(block_alpha[t] > 0 && block_G[t] >= Gmaxn)
+				{
+					Gmaxn = block_G[t];
+					Gmaxn_idx = t;
+				}
+			}
+
+		for(int j=0;j<n;j++)
+		{
+			int i;
+			double grad_diff;
+			if(block_y[j]==+1)
+			{
+				if(block_alpha[j] <= 0)
+					continue;
+				if(block_G[j] >= Gmaxp2)
+					Gmaxp2 = block_G[j];
+				grad_diff = Gmaxp+block_G[j];
+				i = Gmaxp_idx;
+			}
+			else
+			{
+				if(block_alpha[j] >= block_C[j])
+					continue;
+				if(-block_G[j] >= Gmaxn2)
+					Gmaxn2 = -block_G[j];
+				grad_diff = Gmaxn-block_G[j];
+				i = Gmaxn_idx;
+			}
+			if(grad_diff > 0)
+			{
+				double quad_coef = block_QD[i]+block_QD[j]-2*block_Q[i][j];
+				double obj_diff = -(grad_diff*grad_diff)/(quad_coef > 0 ? quad_coef : 1e-12);
+				if(obj_diff <= obj_diff_min)
+				{
+					Gmin_idx = j;
+					obj_diff_min = obj_diff;
+				}
+			}
+		}
 
-		if(Math.max(Gmaxp+Gmaxp2,Gmaxn+Gmaxn2) < eps)
+		if(Math.max(Gmaxp+Gmaxp2,Gmaxn+Gmaxn2) < eps || Gmin_idx == -1)
 			return 1;
-	
-		if(y[Gmin_idx] == +1)
+
+		if(block_y[Gmin_idx] == +1)
 			working_set[0] = Gmaxp_idx;
 		else
 			working_set[0] = Gmaxn_idx;
 		working_set[1] = Gmin_idx;
-	
 		return 0;
 	}
 
@@ -1147,19 +3315,240 @@ final class Solver_NU extends Solver
 			}
 		}
 
-		double r1,r2;
-		if(nr_free1 > 0)
-			r1 = sum_free1/nr_free1;
+		double r1,r2;
+		if(nr_free1 > 0)
+			r1 = sum_free1/nr_free1;
+		else
+			r1 = (ub1+lb1)/2;
+
+		if(nr_free2 > 0)
+			r2 = sum_free2/nr_free2;
+		else
+			r2 = (ub2+lb2)/2;
+
+		si.r = (r1+r2)/2;
+		return (r1-r2)/2;
+	}
+}
+
+//
+// Kernel values shared by the trainings of a run: the one-vs-one pairs,
+// or the folds of a cross validation
+//
+// every vector of x is in one of nr_block blocks (its class, say); the
+// store keeps x grouped by block, block c being rows [start[c],start[c]+
+// count[c]). segment(a,c) holds K(x_a,x_b) for all rows b of block c as
+// floats, computed once and kept while they fit in size bytes (second
+// chance: the oldest segment not read since it was last passed over goes
+// first). A View maps the vectors of a problem to rows of the store, and
+// the column of a vector is a gather from its segments. Trainings may run
+// at once: lookups read the table of segments without locking, inserting
+// and evicting are guarded by the store, and filling a segment by itself.
+//
+final class Kernel_Store {
+	private final Packed_Rows.View x;
+	private final Kernel_Rows rows;	// x in block order
+	private final svm_cache_stats stats = new svm_cache_stats();
+	private final int[] block;	// block of each row
+	private final int[] start;
+	private final int[] count;
+	private final int[] row;	// row of each vector of x
+	private final long size;
+	private long used;
+	// segment(a,c) is table[a][c], null if not kept; the segments of a
+	// row are made with its first one and dropped with its last, so the
+	// table grows with what is kept. kept lists the segments in the order
+	// they were put in or last passed over
+	private final AtomicReferenceArray<AtomicReferenceArray<Segment>> table;
+	private final int[] nr_kept;	// segments of each row in table
+	private final ArrayDeque<Segment> kept = new ArrayDeque<Segment>();
+	// counted without the lock, copied into stats by cache_stats
+	private final LongAdder requests = new LongAdder(), hits = new LongAdder();
+	private final LongAdder fill_time = new LongAdder(), kernel_evaluations = new LongAdder();
+
+	// the segments of the blocks met so far by a gather of the calling
+	// thread, shared by all stores and grown as needed (all null between
+	// gathers)
+	private static final ThreadLocal<float[][]> gather_work = new ThreadLocal<float[][]>()
+	{
+		protected float[][] initialValue()
+		{
+			return new float[0][];
+		}
+	};
+
+	private static final class Segment
+	{
+		final int a, c;
+		final long bytes;	// counted in used from insertion, filled or not
+		volatile float[] data;
+		volatile boolean read;	// since put in or last passed over
+
+		Segment(int a, int c, long bytes)
+		{
+			this.a = a;
+			this.c = c;
+			this.bytes = bytes;
+		}
+	}
+
+	Kernel_Store(Packed_Rows.View x, int nr_block, int[] block_of, long size, svm_parameter param)
+	{
+		int l = x.row.length;
+		int[] order = order(block_of,nr_block);
+		this.x = x;
+		rows = new Kernel_Rows(x.rows,grouped(x.row,order),param);
+		block = new int[l];
+		start = new int[nr_block];
+		count = new int[nr_block];
+		row = new int[l];
+		for(int r=0;r<l;r++)
+		{
+			row[order[r]] = r;
+			block[r] = block_of[order[r]];
+			count[block[r]]++;
+		}
+		for(int c=1;c<nr_block;c++)
+			start[c] = start[c-1]+count[c-1];
+		this.size = size;
+		table = new AtomicReferenceArray<AtomicReferenceArray<Segment>>(l);
+		nr_kept = new int[l];
+	}
+
+	// a store with half of cache_size
+	static Kernel_Store create(Packed_Rows.View x, int nr_block, int[] block_of, svm_parameter param)
+	{
+		return new Kernel_Store(x,nr_block,block_of,(long)(param.cache_size*(1<<19)),param);
+	}
+
+	// the vectors of x in block order, stable within a block
+	private static int[] order(int[] block_of, int nr_block)
+	{
+		int l = block_of.length;
+		int[] next = new int[nr_block+1];
+		for(int k=0;k<l;k++)
+			next[block_of[k]+1]++;
+		for(int c=0;c<nr_block;c++)
+			next[c+1] += next[c];
+		int[] order = new int[l];
+		for(int k=0;k<l;k++)
+			order[next[block_of[k]]++] = k;
+		return order;
+	}
+
+	private static int[] grouped(int[] row, int[] order)
+	{
+		int[] g = new int[row.length];
+		for(int r=0;r<row.length;r++)
+			g[r] = row[order[r]];
+		return g;
+	}
+
+	// the vectors of x as given, with their kernel in the store
+	Packed_Rows.View view()
+	{
+		return new Packed_Rows.View(x.rows,x.row,this,row);
+	}
+
+	// K(x_a,x_b) in double precision
+	double kernel_function(int a, int b)
+	{
+		return rows.kernel_function(a,b);
+	}
+
+	// data[j] = K(x_a,x_b) as a float, b = rows[j], for from <= j < to
+	void gather(float[] data, int a, int[] rows, int from, int to)
+	{
+		int nr_block = start.length;
+		float[][] seg = gather_work.get();
+		if(seg.length < nr_block)
+			gather_work.set(seg = new float[nr_block][]);
+		for(int j=from;j<to;j++)
+		{
+			int b = rows[j], c = block[b];
+			if(seg[c] == null)
+				seg[c] = segment(a,c);
+			data[j] = seg[c][b-start[c]];
+		}
+		Arrays.fill(seg,0,nr_block,null);
+	}
+
+	// K(x_a,x_b) at [b-start[c]] for the rows b of block c
+	private float[] segment(int a, int c)
+	{
+		requests.increment();
+		AtomicReferenceArray<Segment> kept_a = table.get(a);
+		Segment s = kept_a != null ? kept_a.get(c) : null;
+		if(s != null)
+		{
+			hits.increment();
+			if(!s.read)
+				s.read = true;
+		}
 		else
-			r1 = (ub1+lb1)/2;
+			s = insert(a,c);
+		float[] data = s.data;
+		if(data != null)
+			return data;
+		synchronized(s)
+		{
+			if(s.data == null)
+			{
+				long t = System.nanoTime();
+				data = new float[count[c]];
+				double[] k = rows.kernel_column(a,start[c],start[c]+count[c]);
+				for(int b=0;b<count[c];b++)
+					data[b] = (float)k[b];
+				s.data = data;
+				fill_time.add(System.nanoTime()-t);
+				kernel_evaluations.add(count[c]);
+			}
+			return s.data;
+		}
+	}
 
-		if(nr_free2 > 0)
-			r2 = sum_free2/nr_free2;
-		else
-			r2 = (ub2+lb2)/2;
+	// put in segment(a,c), making room; another thread may have put it in
+	// since the lookup
+	private synchronized Segment insert(int a, int c)
+	{
+		AtomicReferenceArray<Segment> kept_a = table.get(a);
+		Segment s = kept_a != null ? kept_a.get(c) : null;
+		if(s != null)
+			return s;
+		if(kept_a == null)
+			table.set(a,kept_a = new AtomicReferenceArray<Segment>(start.length));
+		s = new Segment(a,c,4L*count[c]);
+		kept_a.set(c,s);
+		nr_kept[a]++;
+		kept.addLast(s);
+		used += s.bytes;
+		while(used > size && kept.size() > 1)
+		{
+			Segment old = kept.pollFirst();
+			if(old == s || old.read)
+			{
+				old.read = false;
+				kept.addLast(old);
+				continue;
+			}
+			table.get(old.a).set(old.c,null);
+			if(--nr_kept[old.a] == 0)
+				table.set(old.a,null);
+			stats.evictions++;
+			used -= old.bytes;
+		}
+		stats.peak_bytes = Math.max(stats.peak_bytes,used);
+		return s;
+	}
 
-		si.r = (r1+r2)/2;
-		return (r1-r2)/2;
+	// kernel values computed and kept so far
+	synchronized svm_cache_stats cache_stats()
+	{
+		stats.requests = requests.sum();
+		stats.hits = hits.sum();
+		stats.fill_time = fill_time.sum();
+		stats.kernel_evaluations = kernel_evaluations.sum();
+		return stats;
 	}
 }
 
@@ -1173,29 +3562,96 @@ class SVC_Q extends Kernel
 	private final byte[] y;
 	private final Cache cache;
 	private final double[] QD;
+	// cache_indirection: variable i of the solver is row index[i] of the
+	// kernel and cache, so swap_index only permutes index (else null)
+	private final int[] index;
+	private final int[] position;	// inverse of index
+	private final float[][] buffer;
+	private int next_buffer;
 
-	SVC_Q(svm_problem prob, svm_parameter param, byte[] y_)
+	SVC_Q(svm_problem prob, svm_parameter param, byte[] y_, Packed_Rows.View shared)
 	{
-		super(prob.l, prob.x, param);
+		super(shared, param);
 		y = (byte[])y_.clone();
-		cache = new Cache(prob.l,(long)(param.cache_size*(1<<20)));
+		cache = Cache.create(prob.l,(long)(param.cache_size*(1<<20)),param,this);
 		QD = new double[prob.l];
 		for(int i=0;i<prob.l;i++)
 			QD[i] = kernel_function(i,i);
+		if(param.cache_indirection == 1)
+		{
+			index = new int[prob.l];
+			position = new int[prob.l];
+			for(int i=0;i<prob.l;i++)
+				index[i] = position[i] = i;
+			buffer = new float[2][prob.l];
+			next_buffer = 0;
+		}
+		else
+		{
+			index = position = null;
+			buffer = null;
+		}
 	}
 
 	float[] get_Q(int i, int len)
 	{
 		float[][] data = new float[1][];
-		int start, j;
+		int start;
+		if(index != null)
+		{
+			// whole columns in row order, reordered into a buffer like SVR_Q
+			int l = index.length, real_i = index[i];
+			if((start = cache.get_data(real_i,data,l)) < l)
+			{
+				fill_column(data[0],real_i,start,l);
+				cache.put_data(real_i,data[0],start,l);
+			}
+			float buf[] = buffer[next_buffer];
+			next_buffer = 1 - next_buffer;
+			for(int j=0;j<len;j++)
+				buf[j] = data[0][index[j]];
+			return buf;
+		}
 		if((start = cache.get_data(i,data,len)) < len)
 		{
-			for(j=start;j<len;j++)
-				data[0][j] = (float)(y[i]*y[j]*kernel_function(i,j));
+			fill_column(data[0],i,start,len);
+			cache.put_data(i,data[0],start,len);
 		}
 		return data[0];
 	}
 
+	void prefetch(int[] columns, int n, int len)
+	{
+		next_prefetch_round();
+		for(int k=0;k<n;k++)
+		{
+			int real_k = index != null ? index[columns[k]] : columns[k];
+			int need = index != null ? index.length : len;
+			if(cache.cached_len(real_k) < need)
+				prefetch_row(real_k,need);
+		}
+	}
+
+	void fill(float[] data, int i, int from, int to)
+	{
+		if(gathers())
+		{
+			// the same floats as below: the sign does not change rounding
+			gather(data,i,from,to);
+			for(int j=from;j<to;j++)
+				data[j] = y[i]*y[j]*data[j];
+			return;
+		}
+		double[] k = kernel_column(i,from,to);
+		for(int j=from;j<to;j++)
+			data[j] = (float)(y[i]*y[j]*k[j-from]);
+	}
+
+	boolean keeps_columns()
+	{
+		return index == null && cache.keeps_columns();
+	}
+
 	double[] get_QD()
 	{
 		return QD;
@@ -1203,39 +3659,122 @@ class SVC_Q extends Kernel
 
 	void swap_index(int i, int j)
 	{
-		cache.swap_index(i,j);
-		super.swap_index(i,j);
-		do {byte _=y[i]; y[i]=y[j]; y[j]=_;} while(false);
+		if(index != null)
+		{
+			do {int _=index[i]; index[i]=index[j]; index[j]=_;} while(false);
+			position[index[i]] = i;
+			position[index[j]] = j;
+		}
+		else
+		{
+			cache.swap_index(i,j);
+			super.swap_index(i,j);
+			do {byte _=y[i]; y[i]=y[j]; y[j]=_;} while(false);
+		}
 		do {double _=QD[i]; QD[i]=QD[j]; QD[j]=_;} while(false);
 	}
+
+	boolean is_free(int k)
+	{
+		return super.is_free(index != null ? position[k] : k);
+	}
+
+	void alpha_status_changed(int i)
+	{
+		cache.alpha_status_changed(index != null ? index[i] : i);
+	}
 }
 
 class ONE_CLASS_Q extends Kernel
 {
 	private final Cache cache;
 	private final double[] QD;
+	// cache_indirection: variable i of the solver is row index[i] of the
+	// kernel and cache, so swap_index only permutes index (else null)
+	private final int[] index;
+	private final int[] position;	// inverse of index
+	private final float[][] buffer;
+	private int next_buffer;
 
-	ONE_CLASS_Q(svm_problem prob, svm_parameter param)
+	ONE_CLASS_Q(svm_problem prob, svm_parameter param, Packed_Rows.View shared)
 	{
-		super(prob.l, prob.x, param);
-		cache = new Cache(prob.l,(long)(param.cache_size*(1<<20)));
+		super(shared, param);
+		cache = Cache.create(prob.l,(long)(param.cache_size*(1<<20)),param,this);
 		QD = new double[prob.l];
 		for(int i=0;i<prob.l;i++)
 			QD[i] = kernel_function(i,i);
+		if(param.cache_indirection == 1)
+		{
+			index = new int[prob.l];
+			position = new int[prob.l];
+			for(int i=0;i<prob.l;i++)
+				index[i] = position[i] = i;
+			buffer = new float[2][prob.l];
+			next_buffer = 0;
+		}
+		else
+		{
+			index = position = null;
+			buffer = null;
+		}
 	}
 
 	float[] get_Q(int i, int len)
 	{
 		float[][] data = new float[1][];
-		int start, j;
+		int start;
+		if(index != null)
+		{
+			// whole columns in row order, reordered into a buffer like SVR_Q
+			int l = index.length, real_i = index[i];
+			if((start = cache.get_data(real_i,data,l)) < l)
+			{
+				fill_column(data[0],real_i,start,l);
+				cache.put_data(real_i,data[0],start,l);
+			}
+			float buf[] = buffer[next_buffer];
+			next_buffer = 1 - next_buffer;
+			for(int j=0;j<len;j++)
+				buf[j] = data[0][index[j]];
+			return buf;
+		}
 		if((start = cache.get_data(i,data,len)) < len)
 		{
-			for(j=start;j<len;j++)
-				data[0][j] = (float)kernel_function(i,j);
+			fill_column(data[0],i,start,len);
+			cache.put_data(i,data[0],start,len);
 		}
 		return data[0];
 	}
 
+	void prefetch(int[] columns, int n, int len)
+	{
+		next_prefetch_round();
+		for(int k=0;k<n;k++)
+		{
+			int real_k = index != null ? index[columns[k]] : columns[k];
+			int need = index != null ? index.length : len;
+			if(cache.cached_len(real_k) < need)
+				prefetch_row(real_k,need);
+		}
+	}
+
+	void fill(float[] data, int i, int from, int to)
+	{
+		if(gathers())
+		{
+			gather(data,i,from,to);
+			return;
+		}
+		double[] k = kernel_column(i,from,to);
+		for(int j=from;j<to;j++)
+			data[j] = (float)k[j-from];
+	}
+
+	boolean keeps_columns()
+	{
+		return index == null && cache.keeps_columns();
+	}
+
 	double[] get_QD()
 	{
 		return QD;
@@ -1243,10 +3782,29 @@ class ONE_CLASS_Q extends Kernel
 
 	void swap_index(int i, int j)
 	{
-		cache.swap_index(i,j);
-		super.swap_index(i,j);
+		if(index != null)
+		{
+			do {int _=index[i]; index[i]=index[j]; index[j]=_;} while(false);
+			position[index[i]] = i;
+			position[index[j]] = j;
+		}
+		else
+		{
+			cache.swap_index(i,j);
+			super.swap_index(i,j);
+		}
 		do {double _=QD[i]; QD[i]=QD[j]; QD[j]=_;} while(false);
 	}
+
+	boolean is_free(int k)
+	{
+		return super.is_free(index != null ? position[k] : k);
+	}
+
+	void alpha_status_changed(int i)
+	{
+		cache.alpha_status_changed(index != null ? index[i] : i);
+	}
 }
 
 class SVR_Q extends Kernel
@@ -1255,24 +3813,28 @@ class SVR_Q extends Kernel
 	private final Cache cache;
 	private final byte[] sign;
 	private final int[] index;
+	private final int[] position;	// where the solver holds variable k, inverse of sign/index
 	private int next_buffer;
 	private float[][] buffer;
 	private final double[] QD;
 
-	SVR_Q(svm_problem prob, svm_parameter param)
+	SVR_Q(svm_problem prob, svm_parameter param, Packed_Rows.View shared)
 	{
-		super(prob.l, prob.x, param);
+		super(shared, param);
 		l = prob.l;
-		cache = new Cache(l,(long)(param.cache_size*(1<<20)));
+		cache = Cache.create(l,(long)(param.cache_size*(1<<20)),param,this);
 		QD = new double[2*l];
 		sign = new byte[2*l];
 		index = new int[2*l];
+		position = new int[2*l];
 		for(int k=0;k<l;k++)
 		{
 			sign[k] = 1;
 			sign[k+l] = -1;
 			index[k] = k;
 			index[k+l] = k;
+			position[k] = k;
+			position[k+l] = k+l;
 			QD[k] = kernel_function(k,k);
 			QD[k+l] = QD[k];
 		}
@@ -1285,6 +3847,42 @@ class SVR_Q extends Kernel
 		do {byte _=sign[i]; sign[i]=sign[j]; sign[j]=_;} while(false);
 		do {int _=index[i]; index[i]=index[j]; index[j]=_;} while(false);
 		do {double _=QD[i]; QD[i]=QD[j]; QD[j]=_;} while(false);
+		position[sign[i] > 0 ? index[i] : index[i]+l] = i;
+		position[sign[j] > 0 ? index[j] : index[j]+l] = j;
+	}
+
+	// column k serves both alpha_k and alpha*_k
+	boolean is_free(int k)
+	{
+		return super.is_free(position[k]) || super.is_free(position[k+l]);
+	}
+
+	void alpha_status_changed(int i)
+	{
+		cache.alpha_status_changed(index[i]);
+	}
+
+	void fill(float[] data, int i, int from, int to)
+	{
+		if(gathers())
+		{
+			gather(data,i,from,to);
+			return;
+		}
+		double[] k = kernel_column(i,from,to);
+		for(int j=from;j<to;j++)
+			data[j] = (float)k[j-from];
+	}
+
+	void prefetch(int[] columns, int n, int len)
+	{
+		next_prefetch_round();
+		for(int k=0;k<n;k++)
+		{
+			int real_k = index[columns[k]];
+			if(cache.cached_len(real_k) < l)
+				prefetch_row(real_k,l);
+		}
 	}
 
 	float[] get_Q(int i, int len)
@@ -1293,8 +3891,8 @@ class SVR_Q extends Kernel
 		int j, real_i = index[i];
 		if(cache.get_data(real_i,data,l) < l)
 		{
-			for(j=0;j<l;j++)
-				data[0][j] = (float)kernel_function(real_i,j);
+			fill_column(data[0],real_i,0,l);
+			cache.put_data(real_i,data[0],0,l);
 		}
 
 		// reorder and copy
@@ -1330,6 +3928,55 @@ public class svm {
 
 	private static svm_print_interface svm_print_string = svm_print_stdout;
 
+	// ForkJoin pools for the parallel modes, shared by thread count
+	private static final HashMap<Integer,ForkJoinPool> thread_pools = new HashMap<Integer,ForkJoinPool>();
+
+	static synchronized ForkJoinPool thread_pool(int nr_thread)
+	{
+		ForkJoinPool pool = thread_pools.get(nr_thread);
+		if(pool == null)
+		{
+			pool = new ForkJoinPool(nr_thread);
+			thread_pools.put(nr_thread,pool);
+		}
+		return pool;
+	}
+
+	// the helper thread of a kernel with prefetch, a daemon
+	static ExecutorService prefetch_helper()
+	{
+		ThreadPoolExecutor helper = new ThreadPoolExecutor(1,1,1,TimeUnit.SECONDS,new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r,"svm-prefetch");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		helper.allowCoreThreadTimeOut(true);	// ends when idle, should end_prefetch not come
+		return helper;
+	}
+
+	// param with a progress function that puts name in front of the solve
+	// of each report, or param itself if nobody listens
+	static svm_parameter progress_scope(svm_parameter param, final String name)
+	{
+		final svm_progress_interface outer = param.progress;
+		if(outer == null)
+			return param;
+		param = (svm_parameter)param.clone();
+		param.progress = new svm_progress_interface()
+		{
+			public void progress(String solve, int iter, double gap, int active_size, int nr_free, double obj, long elapsed)
+			{
+				outer.progress(solve.length() == 0 ? name : name+", "+solve,iter,gap,active_size,nr_free,obj,elapsed);
+			}
+		};
+		return param;
+	}
+
 	static void info(String s) 
 	{
 		svm_print_string.print(s);
@@ -1337,7 +3984,7 @@ public class svm {
 
 	private static void solve_c_svc(svm_problem prob, svm_parameter param,
 					double[] alpha, Solver.SolutionInfo si,
-					double Cp, double Cn)
+					double Cp, double Cn, double[] init, Packed_Rows.View shared)
 	{
 		int l = prob.l;
 		double[] minus_ones = new double[l];
@@ -1352,8 +3999,15 @@ public class svm {
 			if(prob.y[i] > 0) y[i] = +1; else y[i] = -1;
 		}
 
-		Solver s = new Solver();
-		s.Solve(l, new SVC_Q(prob,param,y), minus_ones, y,
+		if(init != null)
+		{
+			for(i=0;i<l;i++)
+				alpha[i] = init[i];
+			balance_alpha(alpha,y,Cp,Cn);
+		}
+
+		Solver s = new Solver(param);
+		s.Solve(l, new SVC_Q(prob,param,y,shared), minus_ones, y,
 			alpha, Cp, Cn, param.eps, si, param.shrinking);
 
 		double sum_alpha=0;
@@ -1368,7 +4022,8 @@ public class svm {
 	}
 
 	private static void solve_nu_svc(svm_problem prob, svm_parameter param,
-					double[] alpha, Solver.SolutionInfo si)
+					double[] alpha, Solver.SolutionInfo si, double[] init,
+					Packed_Rows.View shared)
 	{
 		int i;
 		int l = prob.l;
@@ -1397,13 +4052,21 @@ public class svm {
 				sum_neg -= alpha[i];
 			}
 
+		if(init != null)
+		{
+			for(i=0;i<l;i++)
+				alpha[i] = init[i];
+			fill_alpha(alpha,y,+1,nu*l/2,1.0);
+			fill_alpha(alpha,y,-1,nu*l/2,1.0);
+		}
+
 		double[] zeros = new double[l];
 
 		for(i=0;i<l;i++)
 			zeros[i] = 0;
 
-		Solver_NU s = new Solver_NU();
-		s.Solve(l, new SVC_Q(prob,param,y), zeros, y,
+		Solver_NU s = new Solver_NU(param);
+		s.Solve(l, new SVC_Q(prob,param,y,shared), zeros, y,
 			alpha, 1.0, 1.0, param.eps, si, param.shrinking);
 		double r = si.r;
 
@@ -1419,7 +4082,8 @@ public class svm {
 	}
 
 	private static void solve_one_class(svm_problem prob, svm_parameter param,
-					double[] alpha, Solver.SolutionInfo si)
+					double[] alpha, Solver.SolutionInfo si, double[] init,
+					Packed_Rows.View shared)
 	{
 		int l = prob.l;
 		double[] zeros = new double[l];
@@ -1441,13 +4105,21 @@ public class svm {
 			ones[i] = 1;
 		}
 
-		Solver s = new Solver();
-		s.Solve(l, new ONE_CLASS_Q(prob,param), zeros, ones,
+		if(init != null)
+		{
+			for(i=0;i<l;i++)
+				alpha[i] = init[i];
+			fill_alpha(alpha,ones,+1,param.nu*prob.l,1.0);
+		}
+
+		Solver s = new Solver(param);
+		s.Solve(l, new ONE_CLASS_Q(prob,param,shared), zeros, ones,
 			alpha, 1.0, 1.0, param.eps, si, param.shrinking);
 	}
 
 	private static void solve_epsilon_svr(svm_problem prob, svm_parameter param,
-					double[] alpha, Solver.SolutionInfo si)
+					double[] alpha, Solver.SolutionInfo si, double[] init,
+					Packed_Rows.View shared)
 	{
 		int l = prob.l;
 		double[] alpha2 = new double[2*l];
@@ -1466,8 +4138,18 @@ public class svm {
 			y[i+l] = -1;
 		}
 
-		Solver s = new Solver();
-		s.Solve(2*l, new SVR_Q(prob,param), linear_term, y,
+		if(init != null)
+		{
+			for(i=0;i<l;i++)
+			{
+				alpha2[i] = Math.max(init[i],0);
+				alpha2[i+l] = Math.max(-init[i],0);
+			}
+			balance_alpha(alpha2,y,param.C,param.C);
+		}
+
+		Solver s = new Solver(param);
+		s.Solve(2*l, new SVR_Q(prob,param,shared), linear_term, y,
 			alpha2, param.C, param.C, param.eps, si, param.shrinking);
 
 		double sum_alpha = 0;
@@ -1480,7 +4162,8 @@ public class svm {
 	}
 
 	private static void solve_nu_svr(svm_problem prob, svm_parameter param,
-					double[] alpha, Solver.SolutionInfo si)
+					double[] alpha, Solver.SolutionInfo si, double[] init,
+					Packed_Rows.View shared)
 	{
 		int l = prob.l;
 		double C = param.C;
@@ -1502,8 +4185,19 @@ public class svm {
 			y[i+l] = -1;
 		}
 
-		Solver_NU s = new Solver_NU();
-		s.Solve(2*l, new SVR_Q(prob,param), linear_term, y,
+		if(init != null)
+		{
+			for(i=0;i<l;i++)
+			{
+				alpha2[i] = Math.max(init[i],0);
+				alpha2[i+l] = Math.max(-init[i],0);
+			}
+			fill_alpha(alpha2,y,+1,C*param.nu*l/2,C);
+			fill_alpha(alpha2,y,-1,C*param.nu*l/2,C);
+		}
+
+		Solver_NU s = new Solver_NU(param);
+		s.Solve(2*l, new SVR_Q(prob,param,shared), linear_term, y,
 			alpha2, C, C, param.eps, si, param.shrinking);
 
 		svm.info("epsilon = "+(-si.r)+"\n");
@@ -1512,6 +4206,185 @@ public class svm {
 			alpha[i] = alpha2[i] - alpha2[i+l];
 	}
 
+	// warm starts: make a guess of alpha feasible
+
+	// 0 for classification, 1 for one-class, 2 for regression
+	private static int svm_kind(int svm_type)
+	{
+		if(svm_type == svm_parameter.C_SVC || svm_type == svm_parameter.NU_SVC)
+			return 0;
+		return svm_type == svm_parameter.ONE_CLASS ? 1 : 2;
+	}
+
+	// clip alpha[k] into [0,C_k], then take the excess of the side of y with
+	// the larger sum off its free alpha (and only then off the others) so
+	// that sum y[k]*alpha[k] = 0. Alpha at the upper bound stay there when
+	// the excess is just rounding.
+	private static void balance_alpha(double[] alpha, byte[] y, double Cp, double Cn)
+	{
+		int l = alpha.length;
+		double sum_pos = 0, sum_neg = 0;
+		for(int k=0;k<l;k++)
+		{
+			alpha[k] = Math.min(Math.max(alpha[k],0),y[k] > 0 ? Cp : Cn);
+			if(y[k] > 0)
+				sum_pos += alpha[k];
+			else
+				sum_neg += alpha[k];
+		}
+		if(sum_pos == sum_neg)
+			return;
+		int side = sum_pos > sum_neg ? +1 : -1;
+		double C = side > 0 ? Cp : Cn;
+		double excess = Math.abs(sum_pos-sum_neg);
+		double sum_free = 0, sum_side = Math.max(sum_pos,sum_neg);
+		for(int k=0;k<l;k++)
+			if(y[k] == side && alpha[k] < C)
+				sum_free += alpha[k];
+		boolean free_only = sum_free >= excess;
+		double scale = free_only ? (sum_free-excess)/sum_free : (sum_side-excess)/(sum_side-sum_free);
+		for(int k=0;k<l;k++)
+			if(y[k] == side)
+			{
+				if(alpha[k] < C)
+					alpha[k] = free_only ? alpha[k]*scale : 0;
+				else if(!free_only)
+					alpha[k] *= scale;
+			}
+	}
+
+	// scale the alpha[k] with y[k] == side to sum to target, clip them into
+	// [0,C] (what rounding leaves just under C goes to C), and make up what
+	// clipping took off in index order
+	private static void fill_alpha(double[] alpha, byte[] y, int side, double target, double C)
+	{
+		int l = alpha.length;
+		double sum = 0;
+		for(int k=0;k<l;k++)
+			if(y[k] == side)
+			{
+				alpha[k] = Math.max(alpha[k],0);
+				sum += alpha[k];
+			}
+		double scale = sum > 0 ? target/sum : 0;
+		sum = 0;
+		for(int k=0;k<l;k++)
+			if(y[k] == side)
+			{
+				alpha[k] *= scale;
+				if(alpha[k] > C*(1-1e-12))
+					alpha[k] = C;
+				sum += alpha[k];
+			}
+		for(int k=0;k<l && sum < target;k++)
+			if(y[k] == side)
+			{
+				double more = Math.min(C-alpha[k],target-sum);
+				alpha[k] += more;
+				sum += more;
+			}
+	}
+
+	// training vectors compared by their features
+	private static final class sv_key
+	{
+		private final svm_node[] x;
+
+		sv_key(svm_node[] x)
+		{
+			this.x = x;
+		}
+
+		public int hashCode()
+		{
+			int h = x.length;
+			for(int k=0;k<x.length;k++)
+			{
+				long v = Double.doubleToLongBits(x[k].value);
+				h = 31*(31*h+x[k].index)+(int)(v^(v>>>32));
+			}
+			return h;
+		}
+
+		public boolean equals(Object o)
+		{
+			svm_node[] z = ((sv_key)o).x;
+			if(z.length != x.length)
+				return false;
+			for(int k=0;k<x.length;k++)
+				if(z[k].index != x[k].index ||
+				   Double.doubleToLongBits(z[k].value) != Double.doubleToLongBits(x[k].value))
+					return false;
+			return true;
+		}
+	}
+
+	// a model to warm start from; its support vectors are found among the
+	// training vectors by their features
+	private static final class warm_start
+	{
+		private final svm_model model;
+		private final HashMap<sv_key,Integer> sv = new HashMap<sv_key,Integer>();
+		private final int[] sv_class;	// for classification
+
+		warm_start(svm_model model)
+		{
+			this.model = model;
+			for(int s=0;s<model.l;s++)
+				sv.put(new sv_key(model.SV[s]),s);
+			if(model.nSV != null)
+			{
+				sv_class = new int[model.l];
+				int s = 0;
+				for(int c=0;c<model.nr_class;c++)
+					for(int n=0;n<model.nSV[c];n++)
+						sv_class[s++] = c;
+			}
+			else
+				sv_class = null;
+		}
+
+		// coefficient of each of x in the only decision function, 0 if x is
+		// not a support vector
+		double[] coef(svm_node[][] x)
+		{
+			double[] coef = new double[x.length];
+			for(int k=0;k<x.length;k++)
+			{
+				Integer s = sv.get(new sv_key(x[k]));
+				if(s != null)
+					coef[k] = model.sv_coef[0][s];
+			}
+			return coef;
+		}
+
+		// alpha of each of x in the decision function between label_i, the
+		// class of x[0,ci), and label_j, the class of the rest; null if the
+		// model does not have both classes
+		double[] alpha(svm_node[][] x, int ci, int label_i, int label_j)
+		{
+			int c_i = -1, c_j = -1;
+			for(int c=0;c<model.nr_class;c++)
+			{
+				if(model.label[c] == label_i) c_i = c;
+				if(model.label[c] == label_j) c_j = c;
+			}
+			if(c_i == -1 || c_j == -1)
+				return null;
+
+			double[] alpha = new double[x.length];
+			for(int k=0;k<x.length;k++)
+			{
+				Integer s = sv.get(new sv_key(x[k]));
+				int c = k < ci ? c_i : c_j;
+				int d = k < ci ? c_j : c_i;
+				if(s != null && sv_class[s] == c)
+					alpha[k] = Math.abs(model.sv_coef[d > c ? d-1 : d][s]);
+			}
+			return alpha;
+		}
+	}
+
 	//
 	// decision_function
 	//
@@ -1519,30 +4392,33 @@ public class svm {
 	{
 		double[] alpha;
 		double rho;	
+		svm_cache_stats cache_stats;
+		svm_solver_stats solver_stats;
 	};
 
+	// init, if not null, is a guess of alpha to start from
 	static decision_function svm_train_one(
 		svm_problem prob, svm_parameter param,
-		double Cp, double Cn)
+		double Cp, double Cn, double[] init, Packed_Rows.View shared)
 	{
 		double[] alpha = new double[prob.l];
 		Solver.SolutionInfo si = new Solver.SolutionInfo();
 		switch(param.svm_type)
 		{
 			case svm_parameter.C_SVC:
-				solve_c_svc(prob,param,alpha,si,Cp,Cn);
+				solve_c_svc(prob,param,alpha,si,Cp,Cn,init,shared);
 				break;
 			case svm_parameter.NU_SVC:
-				solve_nu_svc(prob,param,alpha,si);
+				solve_nu_svc(prob,param,alpha,si,init,shared);
 				break;
 			case svm_parameter.ONE_CLASS:
-				solve_one_class(prob,param,alpha,si);
+				solve_one_class(prob,param,alpha,si,init,shared);
 				break;
 			case svm_parameter.EPSILON_SVR:
-				solve_epsilon_svr(prob,param,alpha,si);
+				solve_epsilon_svr(prob,param,alpha,si,init,shared);
 				break;
 			case svm_parameter.NU_SVR:
-				solve_nu_svr(prob,param,alpha,si);
+				solve_nu_svr(prob,param,alpha,si,init,shared);
 				break;
 		}
 
@@ -1575,6 +4451,8 @@ public class svm {
 		decision_function f = new decision_function();
 		f.alpha = alpha;
 		f.rho = si.rho;
+		f.cache_stats = si.cache_stats;
+		f.solver_stats = si.solver_stats;
 		return f;
 	}
 
@@ -1761,98 +4639,269 @@ public class svm {
 			svm.info("Exceeds max_iter in multiclass_prob\n");
 	}
 
-	// Cross-validation decision values for probability estimates
-	private static void svm_binary_svc_probability(svm_problem prob, svm_parameter param, double Cp, double Cn, double[] probAB)
+	// how deep the calling thread is in tasks of run_tasks or grid columns;
+	// trainings started there run their pairs and folds one at a time, so
+	// that only the outermost level takes threads and splits the cache
+	private static final ThreadLocal<int[]> task_depth = new ThreadLocal<int[]>()
+	{
+		protected int[] initialValue()
+		{
+			return new int[1];
+		}
+	};
+
+	static boolean in_task()
+	{
+		return task_depth.get()[0] > 0;
+	}
+
+	static void enter_task()
+	{
+		task_depth.get()[0]++;
+	}
+
+	static void leave_task()
+	{
+		task_depth.get()[0]--;
+	}
+
+	// run the tasks on a pool of nr_thread threads made for the call and
+	// return their results in task order; a task's exception is thrown here.
+	// Callers check in_task() first, so pools are never nested.
+	private static <T> ArrayList<T> run_tasks(ArrayList<Callable<T>> task, int nr_thread)
+	{
+		ArrayList<Callable<T>> marked = new ArrayList<Callable<T>>(task.size());
+		for(final Callable<T> t : task)
+			marked.add(new Callable<T>()
+			{
+				public T call() throws Exception
+				{
+					enter_task();
+					try
+					{
+						return t.call();
+					}
+					finally
+					{
+						leave_task();
+					}
+				}
+			});
+		ExecutorService executor = Executors.newFixedThreadPool(nr_thread);
+		try
+		{
+			ArrayList<T> result = new ArrayList<T>(task.size());
+			for(Future<T> f : executor.invokeAll(marked))
+				result.add(f.get());
+			return result;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) throw (RuntimeException)cause;
+			if(cause instanceof Error) throw (Error)cause;
+			throw new RuntimeException(cause);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	// a random shuffle of 0..l-1
+	private static int[] random_permutation(int l, Random rand)
 	{
+		int[] perm = new int[l];
 		int i;
-		int nr_fold = 5;
-		int[] perm = new int[prob.l];
-		double[] dec_values = new double[prob.l];
-
-		// random shuffle
-		for(i=0;i<prob.l;i++) perm[i]=i;
-		for(i=0;i<prob.l;i++)
+		for(i=0;i<l;i++) perm[i]=i;
+		for(i=0;i<l;i++)
 		{
-			int j = i+rand.nextInt(prob.l-i);
+			int j = i+rand.nextInt(l-i);
 			do {int _=perm[i]; perm[i]=perm[j]; perm[j]=_;} while(false);
 		}
-		for(i=0;i<nr_fold;i++)
+		return perm;
+	}
+
+	// train the one-vs-one decision function of the ci vectors of x from si,
+	// labelled label_i, against the cj from sj, labelled label_j; with
+	// probability estimates the sigmoid goes to probAB, the folds being
+	// taken in prob_perm order. shared holds x, and its kernel if in a store.
+	private static decision_function svm_train_pair(svm_node[][] x, int si, int ci, int sj, int cj,
+							svm_parameter param, double Cp, double Cn, warm_start warm,
+							int label_i, int label_j, int[] prob_perm, double[] probAB,
+							Packed_Rows.View shared)
+	{
+		svm_problem sub_prob = new svm_problem();
+		sub_prob.l = ci+cj;
+		sub_prob.x = new svm_node[sub_prob.l][];
+		sub_prob.y = new double[sub_prob.l];
+		int[] index = new int[sub_prob.l];
+		int k;
+		for(k=0;k<ci;k++)
+		{
+			sub_prob.x[k] = x[si+k];
+			sub_prob.y[k] = +1;
+			index[k] = si+k;
+		}
+		for(k=0;k<cj;k++)
+		{
+			sub_prob.x[ci+k] = x[sj+k];
+			sub_prob.y[ci+k] = -1;
+			index[ci+k] = sj+k;
+		}
+		shared = shared.subset(index);
+		if(shared.store == null && param.probability == 1 && param.shared_cache == 1)
 		{
-			int begin = i*prob.l/nr_fold;
-			int end = (i+1)*prob.l/nr_fold;
-			int j,k;
-			svm_problem subprob = new svm_problem();
+			// the folds of the probability estimate and the final training
+			// share the kernel of the pair
+			int[] class_of = new int[sub_prob.l];
+			for(k=0;k<cj;k++)
+				class_of[ci+k] = 1;
+			shared = Kernel_Store.create(shared,2,class_of,param).view();
+			param = (svm_parameter)param.clone();
+			param.cache_size /= 2;
+		}
 
-			subprob.l = prob.l-(end-begin);
-			subprob.x = new svm_node[subprob.l][];
-			subprob.y = new double[subprob.l];
-			
-			k=0;
-			for(j=0;j<begin;j++)
-			{
-				subprob.x[k] = prob.x[perm[j]];
-				subprob.y[k] = prob.y[perm[j]];
-				++k;
-			}
-			for(j=end;j<prob.l;j++)
+		if(param.probability == 1)
+			svm_binary_svc_probability(sub_prob,param,Cp,Cn,probAB,prob_perm,shared);
+
+		return svm_train_one(sub_prob,param,Cp,Cn,
+				     warm == null ? null : warm.alpha(sub_prob.x,ci,label_i,label_j),
+				     shared);
+	}
+
+	// the cross validation folds are taken in perm order, at once with
+	// nr_prob_fold_thread > 1; each writes dec_values only at its own vectors
+	private static void svm_binary_svc_probability(svm_problem prob, svm_parameter param, double Cp, double Cn, double[] probAB, int[] perm,
+						       Packed_Rows.View shared)
+	{
+		int i;
+		int nr_fold = param.nr_prob_fold > 0 ? param.nr_prob_fold : 5;
+		double[] dec_values = new double[prob.l];
+		param = progress_scope(param,"probability");
+
+		if(param.nr_prob_fold_thread > 1 && nr_fold > 1 && !in_task())
+		{
+			int nr_worker = Math.min(param.nr_prob_fold_thread,nr_fold);
+			svm_parameter worker_param = (svm_parameter)param.clone();
+			worker_param.cache_size = param.cache_size/nr_worker;
+			final svm_problem fold_prob = prob;
+			final double fold_Cp = Cp, fold_Cn = Cn;
+			final int[] fold_perm = perm;
+			final double[] fold_dec_values = dec_values;
+			final Packed_Rows.View fold_shared = shared;
+			ArrayList<Callable<Object>> task = new ArrayList<Callable<Object>>(nr_fold);
+			for(i=0;i<nr_fold;i++)
 			{
-				subprob.x[k] = prob.x[perm[j]];
-				subprob.y[k] = prob.y[perm[j]];
-				++k;
+				final int begin = i*prob.l/nr_fold;
+				final int end = (i+1)*prob.l/nr_fold;
+				final svm_parameter fold_param = progress_scope(worker_param,"fold "+i);
+				task.add(new Callable<Object>()
+				{
+					public Object call()
+					{
+						svm_binary_svc_probability_fold(fold_prob,fold_param,fold_Cp,fold_Cn,fold_perm,begin,end,
+										fold_dec_values,fold_shared);
+						return null;
+					}
+				});
 			}
-			int p_count=0,n_count=0;
-			for(j=0;j<k;j++)
-				if(subprob.y[j]>0)
-					p_count++;
-				else
-					n_count++;
+			run_tasks(task,nr_worker);
+		}
+		else
+			for(i=0;i<nr_fold;i++)
+				svm_binary_svc_probability_fold(prob,progress_scope(param,"fold "+i),Cp,Cn,perm,i*prob.l/nr_fold,(i+1)*prob.l/nr_fold,
+								dec_values,shared);
+		sigmoid_train(prob.l,dec_values,prob.y,probAB);
+	}
+
+	// decision values of perm[begin,end) from a model of the rest
+	private static void svm_binary_svc_probability_fold(svm_problem prob, svm_parameter param, double Cp, double Cn,
+							    int[] perm, int begin, int end, double[] dec_values,
+							    Packed_Rows.View shared)
+	{
+		int j,k;
+		svm_problem subprob = new svm_problem();
+
+		subprob.l = prob.l-(end-begin);
+		subprob.x = new svm_node[subprob.l][];
+		subprob.y = new double[subprob.l];
+		int[] index = new int[subprob.l];
 			
-			if(p_count==0 && n_count==0)
-				for(j=begin;j<end;j++)
-					dec_values[perm[j]] = 0;
-			else if(p_count > 0 && n_count == 0)
-				for(j=begin;j<end;j++)
-					dec_values[perm[j]] = 1;
-			else if(p_count == 0 && n_count > 0)
-				for(j=begin;j<end;j++)
-					dec_values[perm[j]] = -1;
+		k=0;
+		for(j=0;j<begin;j++)
+		{
+			subprob.x[k] = prob.x[perm[j]];
+			subprob.y[k] = prob.y[perm[j]];
+			index[k] = perm[j];
+			++k;
+		}
+		for(j=end;j<prob.l;j++)
+		{
+			subprob.x[k] = prob.x[perm[j]];
+			subprob.y[k] = prob.y[perm[j]];
+			index[k] = perm[j];
+			++k;
+		}
+		int p_count=0,n_count=0;
+		for(j=0;j<k;j++)
+			if(subprob.y[j]>0)
+				p_count++;
 			else
+				n_count++;
+			
+		if(p_count==0 && n_count==0)
+			for(j=begin;j<end;j++)
+				dec_values[perm[j]] = 0;
+		else if(p_count > 0 && n_count == 0)
+			for(j=begin;j<end;j++)
+				dec_values[perm[j]] = 1;
+		else if(p_count == 0 && n_count > 0)
+			for(j=begin;j<end;j++)
+				dec_values[perm[j]] = -1;
+		else
+		{
+			svm_parameter subparam = (svm_parameter)param.clone();
+			subparam.probability=0;
+			subparam.C=1.0;
+			subparam.nr_weight=2;
+			subparam.weight_label = new int[2];
+			subparam.weight = new double[2];
+			subparam.weight_label[0]=+1;
+			subparam.weight_label[1]=-1;
+			subparam.weight[0]=Cp;
+			subparam.weight[1]=Cn;
+			svm_model submodel = svm_train(subprob,subparam,null,rand,
+						       shared.subset(index));
+			for(j=begin;j<end;j++)
 			{
-				svm_parameter subparam = (svm_parameter)param.clone();
-				subparam.probability=0;
-				subparam.C=1.0;
-				subparam.nr_weight=2;
-				subparam.weight_label = new int[2];
-				subparam.weight = new double[2];
-				subparam.weight_label[0]=+1;
-				subparam.weight_label[1]=-1;
-				subparam.weight[0]=Cp;
-				subparam.weight[1]=Cn;
-				svm_model submodel = svm_train(subprob,subparam);
-				for(j=begin;j<end;j++)
-				{
-					double[] dec_value=new double[1];
-					svm_predict_values(submodel,prob.x[perm[j]],dec_value);
-					dec_values[perm[j]]=dec_value[0];
-					// ensure +1 -1 order; reason not using CV subroutine
-					dec_values[perm[j]] *= submodel.label[0];
-				}		
-			}
-		}		
-		sigmoid_train(prob.l,dec_values,prob.y,probAB);
+				double[] dec_value=new double[1];
+				svm_predict_values(submodel,prob.x[perm[j]],dec_value);
+				dec_values[perm[j]]=dec_value[0];
+				// ensure +1 -1 order; reason not using CV subroutine
+				dec_values[perm[j]] *= submodel.label[0];
+			}		
+		}
 	}
 
 	// Return parameter of a Laplace distribution 
-	private static double svm_svr_probability(svm_problem prob, svm_parameter param)
+	private static double svm_svr_probability(svm_problem prob, svm_parameter param, Random rand,
+						  Packed_Rows.View shared)
 	{
 		int i;
-		int nr_fold = 5;
+		int nr_fold = param.nr_prob_fold > 0 ? param.nr_prob_fold : 5;
 		double[] ymv = new double[prob.l];
 		double mae = 0;
 
-		svm_parameter newparam = (svm_parameter)param.clone();
+		svm_parameter newparam = (svm_parameter)progress_scope(param,"probability").clone();
 		newparam.probability = 0;
-		svm_cross_validation(prob,newparam,nr_fold,ymv);
+		newparam.nr_fold_thread = param.nr_prob_fold_thread;
+		svm_cross_validation(prob,newparam,nr_fold,ymv,rand,shared);
 		for(i=0;i<prob.l;i++)
 		{
 			ymv[i]=prob.y[i]-ymv[i];
@@ -1938,10 +4987,43 @@ public class svm {
 	// Interface functions
 	//
 	public static svm_model svm_train(svm_problem prob, svm_parameter param)
+	{
+		return svm_train(prob,param,null);
+	}
+
+	// warm start: train from the solution of init, a model trained earlier
+	// with other parameters or on data that has partly changed. Training
+	// vectors that are support vectors of init start from their
+	// coefficients, moved into the new constraints; init may be null.
+	public static svm_model svm_train(svm_problem prob, svm_parameter param, svm_model init)
+	{
+		return svm_train(prob,param,init,rand,new Packed_Rows(prob.x,param).view());
+	}
+
+	// the random choices of the probability estimates come from rand; shared
+	// holds the vectors of prob, and their kernel if in a store
+	private static svm_model svm_train(svm_problem prob, svm_parameter param, svm_model init, Random rand,
+					   Packed_Rows.View shared)
 	{
 		svm_model model = new svm_model();
 		model.param = param;
 
+		if(param.time_limit > 0)
+		{
+			// the solvers see the time limit as a deadline on the token
+			param = (svm_parameter)param.clone();
+			param.cancel = new svm_cancel_token(param.cancel,param.time_limit);
+		}
+
+		warm_start warm = null;
+		if(init != null)
+		{
+			if(svm_kind(init.param.svm_type) == svm_kind(param.svm_type))
+				warm = new warm_start(init);
+			else
+				System.err.print("WARNING: init model is of another svm_type, training from scratch\n");
+		}
+
 		if(param.svm_type == svm_parameter.ONE_CLASS ||
 		   param.svm_type == svm_parameter.EPSILON_SVR ||
 		   param.svm_type == svm_parameter.NU_SVR)
@@ -1958,12 +5040,16 @@ public class svm {
 			    param.svm_type == svm_parameter.NU_SVR))
 			{
 				model.probA = new double[1];
-				model.probA[0] = svm_svr_probability(prob,param);
+				model.probA[0] = svm_svr_probability(prob,param,rand,shared);
 			}
 
-			decision_function f = svm_train_one(prob,param,0,0);
+			decision_function f = svm_train_one(prob,param,0,0,warm == null ? null : warm.coef(prob.x),shared);
 			model.rho = new double[1];
 			model.rho[0] = f.rho;
+			model.cache_stats = new svm_cache_stats[1];
+			model.cache_stats[0] = f.cache_stats;
+			model.solver_stats = new svm_solver_stats[1];
+			model.solver_stats[0] = f.solver_stats;
 
 			int nSV = 0;
 			int i;
@@ -2037,45 +5123,107 @@ public class svm {
 				probB=new double[nr_class*(nr_class-1)/2];
 			}
 
+			// the shuffles of the probability estimates are drawn from rand
+			// in pair order up front, so that the pairs can run in any order
+			int nr_pair = nr_class*(nr_class-1)/2;
+			int[] pair_i = new int[nr_pair], pair_j = new int[nr_pair];
+			int[][] prob_perm = new int[nr_pair][];
+			double[][] probAB = new double[nr_pair][];
 			int p = 0;
 			for(i=0;i<nr_class;i++)
 				for(int j=i+1;j<nr_class;j++)
 				{
-					svm_problem sub_prob = new svm_problem();
-					int si = start[i], sj = start[j];
-					int ci = count[i], cj = count[j];
-					sub_prob.l = ci+cj;
-					sub_prob.x = new svm_node[sub_prob.l][];
-					sub_prob.y = new double[sub_prob.l];
-					int k;
-					for(k=0;k<ci;k++)
-					{
-						sub_prob.x[k] = x[si+k];
-						sub_prob.y[k] = +1;
-					}
-					for(k=0;k<cj;k++)
+					pair_i[p] = i;
+					pair_j[p] = j;
+					if(param.probability == 1)
 					{
-						sub_prob.x[ci+k] = x[sj+k];
-						sub_prob.y[ci+k] = -1;
+						prob_perm[p] = random_permutation(count[i]+count[j],rand);
+						probAB[p] = new double[2];
 					}
+					++p;
+				}
 
-					if(param.probability == 1)
+			// with shared_cache the pairs take their columns from one store
+			// of the kernel of x, which gets half of the cache, unless the
+			// kernel of prob is in a store already
+			svm_parameter pair_param = param;
+			Kernel_Store store = null;
+			Packed_Rows.View grouped = shared.subset(perm);
+			if(grouped.store == null && param.shared_cache == 1 && nr_pair > 1)
+			{
+				int[] class_of = new int[l];
+				for(int c=0;c<nr_class;c++)
+					for(int k=0;k<count[c];k++)
+						class_of[start[c]+k] = c;
+				store = Kernel_Store.create(grouped,nr_class,class_of,param);
+				grouped = store.view();
+				pair_param = (svm_parameter)param.clone();
+				pair_param.cache_size = param.cache_size/2;
+			}
+
+			if(param.nr_pair_thread > 1 && nr_pair > 1 && !in_task())
+			{
+				// a bounded pool of pair trainings, each with its share of
+				// the cache; the results are taken in pair order
+				int nr_worker = Math.min(param.nr_pair_thread,nr_pair);
+				final svm_parameter worker_param = (svm_parameter)pair_param.clone();
+				worker_param.cache_size = pair_param.cache_size/nr_worker;
+				final Packed_Rows.View pair_grouped = grouped;
+				final svm_node[][] pair_x = x;
+				final int[] pair_start = start, pair_count = count, pair_label = label;
+				final double[] pair_C = weighted_C;
+				final warm_start pair_warm = warm;
+				ArrayList<Callable<decision_function>> task = new ArrayList<Callable<decision_function>>(nr_pair);
+				for(p=0;p<nr_pair;p++)
+				{
+					final int pi = pair_i[p], pj = pair_j[p];
+					final int[] perm_p = prob_perm[p];
+					final double[] probAB_p = probAB[p];
+					final svm_parameter param_p = progress_scope(worker_param,"pair "+label[pi]+" vs "+label[pj]);
+					task.add(new Callable<decision_function>()
 					{
-						double[] probAB=new double[2];
-						svm_binary_svc_probability(sub_prob,param,weighted_C[i],weighted_C[j],probAB);
-						probA[p]=probAB[0];
-						probB[p]=probAB[1];
-					}
+						public decision_function call()
+						{
+							return svm_train_pair(pair_x,pair_start[pi],pair_count[pi],pair_start[pj],pair_count[pj],
+									      param_p,pair_C[pi],pair_C[pj],pair_warm,pair_label[pi],pair_label[pj],
+									      perm_p,probAB_p,pair_grouped);
+						}
+					});
+				}
+				f = run_tasks(task,nr_worker).toArray(f);
+			}
+			else
+			{
+				for(p=0;p<nr_pair;p++)
+				{
+					// progress reports name the pair when there are more
+					svm_parameter param_p = nr_pair > 1 ? progress_scope(pair_param,"pair "+label[pair_i[p]]+" vs "+label[pair_j[p]]) : pair_param;
+					f[p] = svm_train_pair(x,start[pair_i[p]],count[pair_i[p]],start[pair_j[p]],count[pair_j[p]],
+							      param_p,weighted_C[pair_i[p]],weighted_C[pair_j[p]],warm,label[pair_i[p]],label[pair_j[p]],
+							      prob_perm[p],probAB[p],grouped);
+				}
+			}
 
-					f[p] = svm_train_one(sub_prob,param,weighted_C[i],weighted_C[j]);
-					for(k=0;k<ci;k++)
-						if(!nonzero[si+k] && Math.abs(f[p].alpha[k]) > 0)
-							nonzero[si+k] = true;
-					for(k=0;k<cj;k++)
-						if(!nonzero[sj+k] && Math.abs(f[p].alpha[ci+k]) > 0)
-							nonzero[sj+k] = true;
-					++p;
+			if(store != null && param.print_stats == 1)
+				svm.info("shared kernel store: "+store.cache_stats()+"\n");
+
+			for(p=0;p<nr_pair;p++)
+			{
+				int si = start[pair_i[p]], sj = start[pair_j[p]];
+				int ci = count[pair_i[p]], cj = count[pair_j[p]];
+				int k;
+				for(k=0;k<ci;k++)
+					if(!nonzero[si+k] && Math.abs(f[p].alpha[k]) > 0)
+						nonzero[si+k] = true;
+				for(k=0;k<cj;k++)
+					if(!nonzero[sj+k] && Math.abs(f[p].alpha[ci+k]) > 0)
+						nonzero[sj+k] = true;
+				if(param.probability == 1)
+				{
+					probA[p]=probAB[p][0];
+					probB[p]=probAB[p][1];
 				}
+			}
 
 			// build output
 
@@ -2086,8 +5234,14 @@ public class svm {
 				model.label[i] = label[i];
 
 			model.rho = new double[nr_class*(nr_class-1)/2];
+			model.cache_stats = new svm_cache_stats[nr_class*(nr_class-1)/2];
+			model.solver_stats = new svm_solver_stats[nr_class*(nr_class-1)/2];
 			for(i=0;i<nr_class*(nr_class-1)/2;i++)
+			{
 				model.rho[i] = f[i].rho;
+				model.cache_stats[i] = f[i].cache_stats;
+				model.solver_stats[i] = f[i].solver_stats;
+			}
 
 			if(param.probability == 1)
 			{
@@ -2168,11 +5322,84 @@ public class svm {
 	
 	// Stratified cross validation
 	public static void svm_cross_validation(svm_problem prob, svm_parameter param, int nr_fold, double[] target)
+	{
+		svm_cross_validation(prob,param,nr_fold,target,rand,new Packed_Rows(prob.x,param).view());
+	}
+
+	// the folds are drawn from rand; with probability estimates each fold
+	// then trains with a stream of its own, seeded from rand in fold order,
+	// so the folds can run in any order (at once with nr_fold_thread > 1)
+	// and target comes out the same. shared holds the vectors of prob, and
+	// their kernel if in a store; else with shared_cache the folds share a
+	// store of their own.
+	private static void svm_cross_validation(svm_problem prob, svm_parameter param, int nr_fold, double[] target, Random rand,
+						 Packed_Rows.View shared)
 	{
 		int i;
-		int[] fold_start = new int[nr_fold+1];
 		int l = prob.l;
 		int[] perm = new int[l];
+		int[] fold_start = svm_cross_validation_split(prob,param,nr_fold,perm,rand);
+
+		Random[] fold_rand = new Random[nr_fold];
+		for(i=0;i<nr_fold;i++)
+			fold_rand[i] = param.probability == 1 ? new Random(rand.nextLong()) : rand;
+
+		// the folds share most of their vectors: compute each kernel value
+		// once into a store by class (one block if not classifying), which
+		// gets half of the cache
+		Kernel_Store store = null;
+		if(shared.store == null && param.shared_cache == 1 && nr_fold > 1)
+		{
+			int[] block_of = new int[l];
+			int nr_block = svm_store_blocks(prob,param,block_of);
+			store = Kernel_Store.create(shared,nr_block,block_of,param);
+			shared = store.view();
+			param = (svm_parameter)param.clone();
+			param.cache_size /= 2;
+		}
+
+		if(param.nr_fold_thread > 1 && nr_fold > 1 && !in_task())
+		{
+			// each fold writes target only at its own vectors
+			int nr_worker = Math.min(param.nr_fold_thread,nr_fold);
+			svm_parameter worker_param = (svm_parameter)param.clone();
+			worker_param.cache_size = param.cache_size/nr_worker;
+			final svm_problem fold_prob = prob;
+			final int[] fold_perm = perm;
+			final double[] fold_target = target;
+			final Packed_Rows.View fold_shared = shared;
+			ArrayList<Callable<Object>> task = new ArrayList<Callable<Object>>(nr_fold);
+			for(i=0;i<nr_fold;i++)
+			{
+				final int begin = fold_start[i], end = fold_start[i+1];
+				final Random rand_i = fold_rand[i];
+				final svm_parameter fold_param = progress_scope(worker_param,"fold "+i);
+				task.add(new Callable<Object>()
+				{
+					public Object call()
+					{
+						svm_cross_validation_fold(fold_prob,fold_param,fold_perm,begin,end,fold_target,null,rand_i,fold_shared);
+						return null;
+					}
+				});
+			}
+			run_tasks(task,nr_worker);
+		}
+		else
+			for(i=0;i<nr_fold;i++)
+				svm_cross_validation_fold(prob,progress_scope(param,"fold "+i),perm,fold_start[i],fold_start[i+1],target,null,fold_rand[i],shared);
+
+		if(store != null && param.print_stats == 1)
+			svm.info("shared kernel store: "+store.cache_stats()+"\n");
+	}
+
+	// shuffle prob into perm, grouped by fold, and return where each fold
+	// starts (fold_start[nr_fold] = l); classification folds are stratified
+	private static int[] svm_cross_validation_split(svm_problem prob, svm_parameter param, int nr_fold, int[] perm, Random rand)
+	{
+		int i;
+		int[] fold_start = new int[nr_fold+1];
+		int l = prob.l;
 		
 		// stratified cv may not give leave-one-out rate
 		// Each class to l folds -> some folds may have zero elements
@@ -2237,43 +5464,377 @@ public class svm {
 			for(i=0;i<=nr_fold;i++)
 				fold_start[i]=i*l/nr_fold;
 		}
+		return fold_start;
+	}
 
-		for(i=0;i<nr_fold;i++)
+	// blocks of a kernel store for the folds of prob: one per class when
+	// classifying, else one; returns their number
+	private static int svm_store_blocks(svm_problem prob, svm_parameter param, int[] block_of)
+	{
+		if(param.svm_type != svm_parameter.C_SVC &&
+		   param.svm_type != svm_parameter.NU_SVC)
+			return 1;
+		HashMap<Double,Integer> block = new HashMap<Double,Integer>();
+		for(int i=0;i<prob.l;i++)
+		{
+			Integer c = block.get(prob.y[i]);
+			if(c == null)
+			{
+				c = block.size();
+				block.put(prob.y[i],c);
+			}
+			block_of[i] = c;
+		}
+		return block.size();
+	}
+
+	// train on all but perm[begin,end), warm started from init if not null,
+	// predict those into target and return the model
+	private static svm_model svm_cross_validation_fold(svm_problem prob, svm_parameter param, int[] perm,
+							   int begin, int end, double[] target, svm_model init, Random rand,
+							   Packed_Rows.View shared)
+	{
+		int l = prob.l;
+		int j,k;
+		svm_problem subprob = new svm_problem();
+
+		subprob.l = l-(end-begin);
+		subprob.x = new svm_node[subprob.l][];
+		subprob.y = new double[subprob.l];
+		int[] index = new int[subprob.l];
+
+		k=0;
+		for(j=0;j<begin;j++)
+		{
+			subprob.x[k] = prob.x[perm[j]];
+			subprob.y[k] = prob.y[perm[j]];
+			index[k] = perm[j];
+			++k;
+		}
+		for(j=end;j<l;j++)
+		{
+			subprob.x[k] = prob.x[perm[j]];
+			subprob.y[k] = prob.y[perm[j]];
+			index[k] = perm[j];
+			++k;
+		}
+		svm_model submodel = svm_train(subprob,param,init,rand,
+					       shared.subset(index));
+		if(param.probability==1 &&
+		   (param.svm_type == svm_parameter.C_SVC ||
+		    param.svm_type == svm_parameter.NU_SVC))
+		{
+			double[] prob_estimates= new double[svm_get_nr_class(submodel)];
+			for(j=begin;j<end;j++)
+				target[perm[j]] = svm_predict_probability(submodel,prob.x[perm[j]],prob_estimates);
+		}
+		else
+			for(j=begin;j<end;j++)
+				target[perm[j]] = svm_predict(submodel,prob.x[perm[j]]);
+		return submodel;
+	}
+
+	// Grid search of C and gamma by cross validation
+	//
+	// All cells use the same folds, drawn from rand. The (gamma, fold)
+	// pairs are searched nr_thread at a time, gamma by gamma, starting in
+	// that order. A fold tries the C values of its gamma in ascending
+	// order, warm starting from its model for the last C it trained, and
+	// the folds of a gamma share one store of kernel values. Half of
+	// cache_size goes to the caches of the folds running, the other half
+	// to the stores, which evict as they fill: a store lives from the
+	// first fold of its gamma to the last, so with folds started in order
+	// no more than nr_thread+1 are kept at once.
+	//
+	// A fold skips a cell once the cell could not beat the best finished
+	// cell of its gamma, the score of a cell not trained on all folds
+	// being the best it could have reached. Which losing cells stop, and
+	// so the warm starts of later cells, may then depend on how the folds
+	// were scheduled; with one thread the cells run one after another.
+	// Kernels that do not use gamma (LINEAR, PRECOMPUTED) train the first
+	// gamma only, and the other gammas repeat its scores with no time
+	// spent. Probability estimates are not used.
+	public static svm_grid_result svm_grid_search(svm_problem prob, svm_parameter param, int nr_fold, double[] C, double[] gamma)
+	{
+		String error = svm_check_grid(prob,param,nr_fold,C,gamma);
+		if(error != null)
+			throw new IllegalArgumentException(error);
+
+		svm_grid_result result = new svm_grid_result();
+		result.C = C.clone();
+		result.gamma = gamma.clone();
+		result.score = new double[gamma.length][C.length];
+		result.folds = new int[gamma.length][C.length];
+		result.time = new long[gamma.length][C.length];
+
+		int[] perm = new int[prob.l];
+		int[] fold_start = svm_cross_validation_split(prob,param,nr_fold,perm,rand);
+
+		int nr_gamma = param.kernel_type == svm_parameter.LINEAR ||
+			       param.kernel_type == svm_parameter.PRECOMPUTED ? 1 : gamma.length;
+		int nr_task = nr_gamma*nr_fold;
+		int nr_worker = Math.max(1,Math.min(param.nr_thread,nr_task));
+		int nr_store = nr_worker > 1 ? Math.min(nr_gamma,nr_worker+1) : 1;
+		svm_parameter grid_param = (svm_parameter)param.clone();
+		grid_param.probability = 0;
+		grid_param.cache_size = param.cache_size/2/nr_worker;
+		long store_size = (long)(param.cache_size/2/nr_store*(1<<20));
+		Packed_Rows.View x = new Packed_Rows(prob.x,param).view();
+		final Grid_Column[] column = new Grid_Column[nr_gamma];
+		for(int g=0;g<nr_gamma;g++)
+			column[g] = new Grid_Column(prob,x,grid_param,store_size,perm,fold_start,result,g,nr_worker > 1 ? nr_fold : 1);
+		if(nr_worker > 1)
+		{
+			ArrayList<Callable<Object>> task = new ArrayList<Callable<Object>>(nr_task);
+			for(int t=0;t<nr_task;t++)
+			{
+				final int g = t/nr_fold, f = t%nr_fold;
+				task.add(new Callable<Object>()
+				{
+					public Object call()
+					{
+						column[g].run(f);
+						return null;
+					}
+				});
+			}
+			run_tasks(task,nr_worker);
+		}
+		else
+			for(int g=0;g<nr_gamma;g++)
+				column[g].run();
+		for(int g=nr_gamma;g<gamma.length;g++)
+			for(int c=0;c<C.length;c++)
+			{
+				result.score[g][c] = result.score[0][c];
+				result.folds[g][c] = result.folds[0][c];
+			}
+
+		boolean regression = param.svm_type == svm_parameter.EPSILON_SVR ||
+				     param.svm_type == svm_parameter.NU_SVR;
+		result.best_score = regression ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+		for(int g=0;g<gamma.length;g++)
+			for(int c=0;c<C.length;c++)
+				if(result.folds[g][c] == nr_fold &&
+				   (regression ? result.score[g][c] < result.best_score : result.score[g][c] > result.best_score))
+				{
+					result.best_score = result.score[g][c];
+					result.best_C = C[c];
+					result.best_gamma = gamma[g];
+				}
+		return result;
+	}
+
+	private static String svm_check_grid(svm_problem prob, svm_parameter param, int nr_fold, double[] C, double[] gamma)
+	{
+		String error = svm_check_parameter(prob,param);
+		if(error != null)
+			return error;
+
+		if(nr_fold < 2)
+			return "nr_fold < 2";
+
+		if(nr_fold > prob.l)
+			return "nr_fold > number of vectors";
+
+		if(C.length == 0 || gamma.length == 0)
+			return "empty grid";
+
+		for(int c=0;c<C.length;c++)
+			if(!(C[c] > 0))
+				return "C <= 0";
+
+		for(int g=0;g<gamma.length;g++)
+			if(!(gamma[g] >= 0))
+				return "gamma < 0";
+
+		return null;
+	}
+
+	// the cells of result.gamma[g]: each fold passes them in ascending
+	// order of C, training or skipping, and a cell is scored once all
+	// folds have passed it. Folds may run at once; the tallies are
+	// guarded by the column, and each fold writes target only at its
+	// own vectors.
+	private static final class Grid_Column
+	{
+		private final svm_problem prob;
+		private final svm_parameter param;
+		private final int[] perm, fold_start;
+		private final svm_grid_result result;
+		private final int g, nr_fold;
+		private final boolean regression;
+		private final int[] order;		// C values in ascending order
+		private final double[] target;
+		private final svm_model[] fold_model;	// warm start of each fold
+
+		// per cell: right predictions (or squared error for regression)
+		// and vectors tested over the folds trained, folds trained and
+		// passed, and time spent
+		private final double[] sum;
+		private final int[] tested, trained, passed;
+		private final long[] time;
+		private double best;			// best score of the finished cells
+
+		// the folds share a store of store_size bytes, made by the first
+		// fold to train and dropped once the runs are through
+		private final Packed_Rows.View x;
+		private final long store_size;
+		private Kernel_Store store;
+		private Packed_Rows.View shared;
+		private int nr_run;
+
+		Grid_Column(svm_problem prob, Packed_Rows.View x, svm_parameter param, long store_size,
+			    int[] perm, int[] fold_start, svm_grid_result result, int g, int nr_run)
 		{
-			int begin = fold_start[i];
-			int end = fold_start[i+1];
-			int j,k;
-			svm_problem subprob = new svm_problem();
+			int l = prob.l;
+			int nr_C = result.C.length;
+			int n,j;
+
+			this.prob = prob;
+			this.x = x;
+			this.store_size = store_size;
+			this.perm = perm;
+			this.fold_start = fold_start;
+			this.result = result;
+			this.g = g;
+			this.nr_run = nr_run;
+			shared = x;
+			nr_fold = fold_start.length-1;
+			regression = param.svm_type == svm_parameter.EPSILON_SVR ||
+				     param.svm_type == svm_parameter.NU_SVR;
+
+			param = (svm_parameter)param.clone();
+			param.gamma = result.gamma[g];
+			this.param = param;
+
+			order = new int[nr_C];
+			for(n=0;n<nr_C;n++)
+			{
+				for(j=n;j>0 && result.C[order[j-1]] > result.C[n];j--)
+					order[j] = order[j-1];
+				order[j] = n;
+			}
 
-			subprob.l = l-(end-begin);
-			subprob.x = new svm_node[subprob.l][];
-			subprob.y = new double[subprob.l];
+			target = new double[l];
+			fold_model = new svm_model[nr_fold];
+			sum = new double[nr_C];
+			tested = new int[nr_C];
+			trained = new int[nr_C];
+			passed = new int[nr_C];
+			time = new long[nr_C];
+			best = regression ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+		}
 
-			k=0;
-			for(j=0;j<begin;j++)
+		// all folds, one cell after another
+		void run()
+		{
+			try
 			{
-				subprob.x[k] = prob.x[perm[j]];
-				subprob.y[k] = prob.y[perm[j]];
-				++k;
+				for(int n=0;n<order.length;n++)
+					for(int f=0;f<nr_fold;f++)
+						pass(f,order[n]);
 			}
-			for(j=end;j<l;j++)
+			finally
 			{
-				subprob.x[k] = prob.x[perm[j]];
-				subprob.y[k] = prob.y[perm[j]];
-				++k;
+				leave();
 			}
-			svm_model submodel = svm_train(subprob,param);
-			if(param.probability==1 &&
-			   (param.svm_type == svm_parameter.C_SVC ||
-			    param.svm_type == svm_parameter.NU_SVC))
+		}
+
+		// fold f, through all cells
+		void run(int f)
+		{
+			try
 			{
-				double[] prob_estimates= new double[svm_get_nr_class(submodel)];
-				for(j=begin;j<end;j++)
-					target[perm[j]] = svm_predict_probability(submodel,prob.x[perm[j]],prob_estimates);
+				for(int n=0;n<order.length;n++)
+					pass(f,order[n]);
 			}
-			else
-				for(j=begin;j<end;j++)
-					target[perm[j]] = svm_predict(submodel,prob.x[perm[j]]);
+			finally
+			{
+				leave();
+			}
+		}
+
+		private void pass(int f, int c)
+		{
+			int begin = fold_start[f], end = fold_start[f+1];
+			long start_time = System.nanoTime();
+			double s = 0;
+			boolean train = !stopped(c);
+			if(train)
+			{
+				svm_parameter cell_param = (svm_parameter)progress_scope(param,"gamma = "+result.gamma[g]+", C = "+result.C[c]).clone();
+				cell_param.C = result.C[c];
+				fold_model[f] = svm_cross_validation_fold(prob,progress_scope(cell_param,"fold "+f),perm,begin,end,target,fold_model[f],rand,shared());
+				for(int j=begin;j<end;j++)
+				{
+					double d = target[perm[j]]-prob.y[perm[j]];
+					if(regression)
+						s += d*d;
+					else if(d == 0)
+						++s;
+				}
+			}
+			passed(c,train,s,end-begin,System.nanoTime()-start_time);
+		}
+
+		// exact once all folds are in, else the best still reachable
+		private double score(int c)
+		{
+			int l = prob.l;
+			return regression ? sum[c]/l : 100.0*(sum[c]+l-tested[c])/l;
+		}
+
+		private synchronized boolean stopped(int c)
+		{
+			return regression ? score(c) > best : score(c) < best;
+		}
+
+		private synchronized void passed(int c, boolean train, double s, int nr_tested, long t)
+		{
+			if(train)
+			{
+				sum[c] += s;
+				tested[c] += nr_tested;
+				++trained[c];
+			}
+			time[c] += t;
+			if(++passed[c] < nr_fold)
+				return;
+
+			double score = score(c);
+			int f = trained[c];
+			if(f == nr_fold && (regression ? score < best : score > best))
+				best = score;
+			result.score[g][c] = score;
+			result.folds[g][c] = f;
+			result.time[g][c] = time[c];
+			svm.info("gamma = "+result.gamma[g]+", C = "+result.C[c]+": "
+				 +(regression ? "mean squared error = "+score : "accuracy = "+score+"%")
+				 +(f < nr_fold ? " (stopped after "+f+" folds)" : "")+"\n");
+		}
+
+		private synchronized Packed_Rows.View shared()
+		{
+			if(store == null && nr_run > 0)
+			{
+				int l = prob.l;
+				int[] block_of = new int[l];
+				int nr_block = svm_store_blocks(prob,param,block_of);
+				store = new Kernel_Store(x,nr_block,block_of,store_size,param);
+				shared = store.view();
+			}
+			return shared;
+		}
+
+		private synchronized void leave()
+		{
+			if(--nr_run > 0)
+				return;
+			if(store != null && param.print_stats == 1)
+				svm.info("shared kernel store: "+store.cache_stats()+"\n");
+			store = null;
+			shared = x;
 		}
 	}
 
@@ -2457,6 +6018,11 @@ public class svm {
 		   param.kernel_type == svm_parameter.SIGMOID)
 			fp.writeBytes("coef0 "+param.coef0+"\n");
 
+		// the kernel values of a precomputed model with kernel_file are
+		// read from that file again at prediction
+		if(param.kernel_type == svm_parameter.PRECOMPUTED && param.kernel_file != null)
+			fp.writeBytes("kernel_file "+param.kernel_file+"\n");
+
 		int nr_class = model.nr_class;
 		int l = model.l;
 		fp.writeBytes("nr_class "+nr_class+"\n");
@@ -2521,6 +6087,18 @@ public class svm {
 		fp.close();
 	}
 
+	// write a kernel matrix for PRECOMPUTED with kernel_file:
+	// kernel[r][c] is the value between the vectors numbered r+1 and c+1
+	public static void svm_save_kernel_matrix(String file_name, double[][] kernel) throws IOException
+	{
+		Mapped_Kernel.save(file_name,kernel.length,kernel[0].length,8,kernel,null);
+	}
+
+	public static void svm_save_kernel_matrix(String file_name, float[][] kernel) throws IOException
+	{
+		Mapped_Kernel.save(file_name,kernel.length,kernel[0].length,4,null,kernel);
+	}
+
 	private static double atof(String s)
 	{
 		return Double.valueOf(s).doubleValue();
@@ -2594,6 +6172,8 @@ public class svm {
 				param.gamma = atof(arg);
 			else if(cmd.startsWith("coef0"))
 				param.coef0 = atof(arg);
+			else if(cmd.startsWith("kernel_file"))
+				param.kernel_file = arg;
 			else if(cmd.startsWith("nr_class"))
 				model.nr_class = atoi(arg);
 			else if(cmd.startsWith("total_sv"))
@@ -2699,6 +6279,25 @@ public class svm {
 		   kernel_type != svm_parameter.PRECOMPUTED)
 			return "unknown kernel type";
 
+		if(kernel_type == svm_parameter.PRECOMPUTED && param.kernel_file != null)
+		{
+			Mapped_Kernel gram;
+			try
+			{
+				gram = Mapped_Kernel.open(param.kernel_file);
+			}
+			catch(IOException e)
+			{
+				return "cannot read kernel_file: "+e.getMessage();
+			}
+			for(int i=0;i<prob.l;i++)
+			{
+				int serial = prob.x[i].length > 0 ? (int)prob.x[i][0].value : 0;
+				if(serial < 1 || serial > Math.min(gram.rows,gram.cols))
+					return "sample serial number out of kernel_file range";
+			}
+		}
+
 		if(param.gamma < 0)
 			return "gamma < 0";
 
@@ -2710,6 +6309,73 @@ public class svm {
 		if(param.cache_size <= 0)
 			return "cache_size <= 0";
 
+		if(param.cache_type != svm_parameter.HEAP_CACHE &&
+		   param.cache_type != svm_parameter.DIRECT_CACHE)
+			return "unknown cache type";
+
+		if(param.cache_policy != svm_parameter.LRU &&
+		   param.cache_policy != svm_parameter.LFU &&
+		   param.cache_policy != svm_parameter.KEEP_FREE_SV)
+			return "unknown cache policy";
+
+		if(param.cache_precision != svm_parameter.FP32 &&
+		   param.cache_precision != svm_parameter.FP16 &&
+		   param.cache_precision != svm_parameter.BF16)
+			return "unknown cache precision";
+
+		if(param.cache_precision != svm_parameter.FP32 &&
+		   param.cache_type != svm_parameter.HEAP_CACHE)
+			return "16-bit cache_precision needs HEAP_CACHE";
+
+		if(param.cache_indirection != 0 &&
+		   param.cache_indirection != 1)
+			return "cache_indirection != 0 and cache_indirection != 1";
+
+		if(param.nr_thread < 0)
+			return "nr_thread < 0";
+
+		if(param.fill_threshold < 0)
+			return "fill_threshold < 0";
+
+		if(param.scan_threshold < 0)
+			return "scan_threshold < 0";
+
+		if(param.block_size < 0 || param.block_size == 1)
+			return "block_size < 2";
+
+		if(param.progress_interval < 0)
+			return "progress_interval < 0";
+
+		if(param.max_iter < 0)
+			return "max_iter < 0";
+
+		if(param.time_limit < 0)
+			return "time_limit < 0";
+
+		if(param.prefetch < 0)
+			return "prefetch < 0";
+
+		if(param.dense_size < 0)
+			return "dense_size < 0";
+
+		if(param.nr_pair_thread < 0)
+			return "nr_pair_thread < 0";
+
+		if(param.shared_cache != 0 && param.shared_cache != 1)
+			return "shared_cache != 0 and shared_cache != 1";
+
+		if(param.nr_fold_thread < 0)
+			return "nr_fold_thread < 0";
+
+		if(param.nr_prob_fold < 0 || param.nr_prob_fold == 1)
+			return "nr_prob_fold < 2";
+
+		if(param.nr_prob_fold_thread < 0)
+			return "nr_prob_fold_thread < 0";
+
+		if(param.print_stats != 0 && param.print_stats != 1)
+			return "print_stats != 0 and print_stats != 1";
+
 		if(param.eps <= 0)
 			return "eps <= 0";
 
@@ -2730,8 +6396,9 @@ public class svm {
 				return "p < 0";
 
 		if(param.shrinking != 0 &&
-		   param.shrinking != 1)
-			return "shrinking != 0 and shrinking != 1";
+		   param.shrinking != 1 &&
+		   param.shrinking != 2)
+			return "shrinking != 0, 1 and 2";
 
 		if(param.probability != 0 &&
 		   param.probability != 1)
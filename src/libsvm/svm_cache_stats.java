@@ -0,0 +1,31 @@
+//
+// svm_cache_stats
+//
+package libsvm;
+public class svm_cache_stats implements java.io.Serializable
+{
+	public long requests;		// columns asked of the kernel cache
+	public long hits;		// requests answered without computing anything
+	public long partial_hits;	// requests that only had to extend a cached column
+	public long evictions;		// columns given up to make room
+	public long kernel_evaluations;	// kernel values computed to fill columns
+	public long peak_bytes;		// most memory held by cached columns at once
+	public long fill_time;		// nanoseconds spent filling columns
+	public long prefetches;		// columns computed ahead on the helper thread
+	public long prefetch_hits;	// misses filled from a prefetched column
+	public long prefetch_waits;	// of those, the ones that had to wait for the helper
+
+	public double hit_ratio()
+	{
+		return requests > 0 ? (double)hits/requests : 0;
+	}
+
+	public String toString()
+	{
+		return "cache hit rate = "+100*hit_ratio()+"%, partial = "+partial_hits
+			+", evictions = "+evictions+", kernel evaluations = "+kernel_evaluations
+			+", peak = "+peak_bytes+" bytes, fill time = "+fill_time/1000000+" ms"
+			+(prefetches > 0 ? ", prefetched = "+prefetches+", used = "+prefetch_hits
+			  +" ("+prefetch_waits+" waited)" : "");
+	}
+}
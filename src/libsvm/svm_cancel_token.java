@@ -0,0 +1,38 @@
+//
+// svm_cancel_token
+//
+package libsvm;
+public class svm_cancel_token
+{
+	private volatile boolean cancelled;
+	private final svm_cancel_token parent;	// cancelled with parent, may be null
+	private final boolean timed;
+	private final long deadline;		// System.nanoTime() when timed
+
+	public svm_cancel_token()
+	{
+		this(null,0);
+	}
+
+	// a token that is also cancelled by parent and after the given seconds
+	public svm_cancel_token(svm_cancel_token parent, double seconds)
+	{
+		this.parent = parent;
+		this.timed = seconds > 0;
+		this.deadline = System.nanoTime() + (long)(seconds*1e9);
+	}
+
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	public boolean is_cancelled()
+	{
+		if(cancelled)
+			return true;
+		if((timed && System.nanoTime() - deadline >= 0) || (parent != null && parent.is_cancelled()))
+			cancelled = true;
+		return cancelled;
+	}
+}
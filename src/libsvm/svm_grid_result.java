@@ -0,0 +1,15 @@
+//
+// svm_grid_result
+//
+package libsvm;
+public class svm_grid_result implements java.io.Serializable
+{
+	public double[] C;		// values of C searched
+	public double[] gamma;		// values of gamma searched
+	public double[][] score;	// cross validation accuracy (%), or mean squared error for regression (score[gamma][C])
+	public int[][] folds;		// folds trained per cell, fewer than nr_fold if the cell was stopped early
+	public long[][] time;		// nanoseconds spent per cell, summed over its folds (0 past the first gamma for kernels without gamma)
+	public double best_C;		// the cell with the best score
+	public double best_gamma;
+	public double best_score;
+}
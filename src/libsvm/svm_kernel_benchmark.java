@@ -0,0 +1,127 @@
+//
+// svm_kernel_benchmark
+//
+// Times kernel evaluation on random dense vectors for each kernel type,
+// with and without the dense fast paths:
+//
+//   java -cp <classes> libsvm.svm_kernel_benchmark [l [d ...]]
+//
+// l vectors (800 by default) of d features each (13 100 1000 by default).
+// Each time is the best of five runs over the full l*l kernel matrix in
+// ms. train fills it a column at a time as Kernel does, once from vectors
+// packed with dense_size large enough for all of them and once with
+// dense_size = 0. predict calls Kernel.k_function as svm_predict does,
+// once on the vectors as they are and once with a zero feature d+2 added
+// to each, which makes them look sparse and leaves every kernel value as
+// it is.
+//
+package libsvm;
+import java.util.*;
+
+public class svm_kernel_benchmark
+{
+	private static final int nr_run = 5;
+	private static final String[] kernel_name = { "linear", "poly", "rbf", "sigmoid" };
+
+	private static double sink;	// keeps the kernel values in use
+
+	public static void main(String[] argv)
+	{
+		int l = argv.length > 0 ? Integer.parseInt(argv[0]) : 800;
+		int[] dims = { 13, 100, 1000 };
+		if(argv.length > 1)
+		{
+			dims = new int[argv.length-1];
+			for(int i=1;i<argv.length;i++)
+				dims[i-1] = Integer.parseInt(argv[i]);
+		}
+
+		System.out.print("l = "+l+", best of "+nr_run+" runs, ms (dense vs sparse)\n");
+		for(int d : dims)
+		{
+			Random rand = new Random(1);
+			svm_node[][] x = new svm_node[l][];
+			svm_node[][] x_sparse = new svm_node[l][];
+			for(int i=0;i<l;i++)
+			{
+				x[i] = new svm_node[d];
+				x_sparse[i] = new svm_node[d+1];
+				for(int k=0;k<d;k++)
+				{
+					x[i][k] = new svm_node();
+					x[i][k].index = k+1;
+					x[i][k].value = rand.nextDouble();
+					x_sparse[i][k] = x[i][k];
+				}
+				x_sparse[i][d] = new svm_node();
+				x_sparse[i][d].index = d+2;
+				x_sparse[i][d].value = 0;
+			}
+
+			for(int t=0;t<kernel_name.length;t++)
+			{
+				svm_parameter param = new svm_parameter();
+				param.kernel_type = t;
+				param.degree = 3;
+				param.gamma = 1.0/d;
+				param.coef0 = 0;
+
+				param.dense_size = 8.0*(d+1)*(l+1)/(1<<20)+1;
+				double train_dense = time_train(new Packed_Rows(x,param),param);
+				param.dense_size = 0;
+				double train_sparse = time_train(new Packed_Rows(x,param),param);
+				double predict_dense = time_predict(x,param);
+				double predict_sparse = time_predict(x_sparse,param);
+
+				System.out.print("d = "+d+" "+kernel_name[t]+": train "
+						 +format(train_dense)+" vs "+format(train_sparse)+", predict "
+						 +format(predict_dense)+" vs "+format(predict_sparse)+"\n");
+			}
+		}
+		if(sink == 0.5)
+			System.out.print("");
+	}
+
+	private static double time_train(Packed_Rows x, svm_parameter param)
+	{
+		int l = x.x_ptr.length-1;
+		Packed_Rows.View v = x.view();
+		Kernel_Rows rows = new Kernel_Rows(x,v.row,param);
+		long best = Long.MAX_VALUE;
+		for(int run=0;run<nr_run;run++)
+		{
+			long t = System.nanoTime();
+			double sum = 0;
+			for(int i=0;i<l;i++)
+			{
+				double[] k = rows.kernel_column(i,0,l);
+				sum += k[i];
+			}
+			best = Math.min(best,System.nanoTime()-t);
+			sink += sum;
+		}
+		return best/1e6;
+	}
+
+	private static double time_predict(svm_node[][] x, svm_parameter param)
+	{
+		int l = x.length;
+		long best = Long.MAX_VALUE;
+		for(int run=0;run<nr_run;run++)
+		{
+			long t = System.nanoTime();
+			double sum = 0;
+			for(int i=0;i<l;i++)
+				for(int j=0;j<l;j++)
+					sum += Kernel.k_function(x[i],x[j],param);
+			best = Math.min(best,System.nanoTime()-t);
+			sink += sum;
+		}
+		return best/1e6;
+	}
+
+	private static String format(double ms)
+	{
+		return String.format(Locale.ROOT,ms < 10 ? "%.1f" : "%.0f",ms);
+	}
+}
@@ -12,6 +12,8 @@ public class svm_model implements java.io.Serializable
 	public double[] rho;		// constants in decision functions (rho[k*(k-1)/2])
 	public double[] probA;         // pariwise probability information
 	public double[] probB;
+	public svm_cache_stats[] cache_stats;	// kernel cache use of each solve (cache_stats[k*(k-1)/2]), null if loaded
+	public svm_solver_stats[] solver_stats;	// iterations and shrinking of each solve (solver_stats[k*(k-1)/2]), null if loaded
 
 	// for classification only
 
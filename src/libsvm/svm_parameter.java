@@ -15,14 +15,34 @@ public class svm_parameter implements Cloneable,java.io.Serializable
 	public static final int SIGMOID = 3;
 	public static final int PRECOMPUTED = 4;
 
+	/* cache_type */
+	public static final int HEAP_CACHE = 0;
+	public static final int DIRECT_CACHE = 1;
+
+	/* cache_policy */
+	public static final int LRU = 0;
+	public static final int LFU = 1;
+	public static final int KEEP_FREE_SV = 2;
+
+	/* cache_precision */
+	public static final int FP32 = 0;
+	public static final int FP16 = 1;
+	public static final int BF16 = 2;
+
 	public int svm_type;
 	public int kernel_type;
 	public int degree;	// for poly
 	public double gamma;	// for poly/rbf/sigmoid
 	public double coef0;	// for poly/sigmoid
+	public String kernel_file;	// for precomputed: read the kernel matrix from this file (see svm_save_kernel_matrix)
 
 	// these are for training only
 	public double cache_size; // in MB
+	public int cache_type;	// HEAP_CACHE, or DIRECT_CACHE to keep columns off the java heap
+	public int cache_policy;	// which kernel column to evict: LRU, LFU or KEEP_FREE_SV
+	public int cache_indirection;	// shrink through an index map instead of moving cached data
+	public int cache_precision;	// FP32, or FP16/BF16 to keep cached kernel entries in 16 bits (HEAP_CACHE only)
+	public double dense_size;	// in MB, for dense copies of the training vectors with at least half of the features present (0 for none)
 	public double eps;	// stopping criteria
 	public double C;	// for C_SVC, EPSILON_SVR and NU_SVR
 	public int nr_weight;		// for C_SVC
@@ -30,8 +50,24 @@ public class svm_parameter implements Cloneable,java.io.Serializable
 	public double[] weight;		// for C_SVC
 	public double nu;	// for NU_SVC, ONE_CLASS, and NU_SVR
 	public double p;	// for EPSILON_SVR
-	public int shrinking;	// use the shrinking heuristics
+	public int shrinking;	// use the shrinking heuristics (2: shrink at an adaptive interval)
 	public int probability; // do probability estimates
+	public int nr_thread;	// worker threads for the parallel modes, <= 1 runs serially
+	public int fill_threshold;	// shortest column range computed in parallel (0 for default)
+	public int scan_threshold;	// smallest active set scanned and updated in parallel each iteration (0 for default)
+	public int block_size;	// variables optimised together per iteration (0 or 2 for pairs)
+	public transient svm_progress_interface progress;	// told how each solver converges (may be null)
+	public int progress_interval;	// iterations between calls of progress (0 for default)
+	public int max_iter;	// iterations each solver may take (0 for default)
+	public double time_limit;	// seconds each svm_train call may take (0 for no limit)
+	public transient svm_cancel_token cancel;	// stops training early once cancelled (may be null)
+	public int prefetch;	// kernel columns computed ahead on a helper thread (0 for none)
+	public int nr_pair_thread;	// one-vs-one pairs trained at once, sharing cache_size (<= 1 one at a time, as inside parallel folds)
+	public int shared_cache;	// one-vs-one pairs share kernel values, computed once per training vector pair
+	public int nr_fold_thread;	// cross validation folds trained at once, sharing cache_size (<= 1 one at a time, as inside parallel pairs)
+	public int nr_prob_fold;	// folds of the cross validation for probability estimates (0 for 5)
+	public int nr_prob_fold_thread;	// of those, folds trained at once, sharing cache_size (<= 1 one at a time, as inside parallel pairs or folds)
+	public int print_stats;	// also print the cache and solver statistics of each solve (0 or 1)
 
 	public Object clone() 
 	{
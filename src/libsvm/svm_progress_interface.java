@@ -0,0 +1,13 @@
+package libsvm;
+public interface svm_progress_interface
+{
+	// called by each solver of a training every progress_interval
+	// iterations and once when it stops; solvers running at once call it
+	// from their own threads. solve names the solver within the call, as
+	// in "fold 2, pair 1 vs 3" ("" if there is only one). gap is the
+	// violation Gmax+Gmax2 of the last working set selection, obj the
+	// objective from the current gradient (NaN while variables are
+	// shrunk, their gradient being stale) and elapsed the nanoseconds
+	// since the solver started.
+	public void progress(String solve, int iter, double gap, int active_size, int nr_free, double obj, long elapsed);
+}
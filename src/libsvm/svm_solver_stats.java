@@ -0,0 +1,19 @@
+//
+// svm_solver_stats
+//
+package libsvm;
+public class svm_solver_stats implements java.io.Serializable
+{
+	public int iterations;
+	public boolean converged;	// false if stopped by max_iter, time_limit or cancel
+	public int shrink_calls;	// times the active set was shrunk
+	public long shrunk;		// variables taken out of the active set in all
+	public int reconstructions;	// times the whole gradient was reconstructed
+	public long reconstruct_time;	// nanoseconds spent reconstructing the gradient
+
+	public String toString()
+	{
+		return "#shrink = "+shrink_calls+", shrunk = "+shrunk
+			+", #reconstruct = "+reconstructions+", reconstruct time = "+reconstruct_time/1000000+" ms";
+	}
+}